@@ -18,6 +18,9 @@ public class ClueConfiguration {
     private static final String QUERY_BUILDER_PARAM = "query.builder";
     private static final String TERM_BYTESREF_DISPLAY = "term.bytesref.display";
     private static final String PAYLOAD_BYTESREF_DISPLAY = "payload.bytesref.display";
+    private static final String WORKER_THREADS = "worker.threads";
+    private static final String CACHE_SIZE_MB = "cache.size.mb";
+    private static final int DEFAULT_CACHE_SIZE_MB = 32;
 
     private final Analyzer analyzerQuery;
     private final DirectoryBuilder dirBuilder;
@@ -25,6 +28,8 @@ public class ClueConfiguration {
     private final IndexReaderFactory indexReaderFactory;
     private final BytesRefDisplay termBytesRefDisplay;
     private final BytesRefDisplay payloadBytesRefDisplay;
+    private final int workerThreads;
+    private final int cacheSizeMB;
 
     private final Properties config;
 
@@ -42,6 +47,8 @@ public class ClueConfiguration {
                 StringBytesRefDisplay.INSTANCE);
         payloadBytesRefDisplay = getInstance(config.getProperty(PAYLOAD_BYTESREF_DISPLAY),
                 RawBytesRefDisplay.INSTANCE);
+        workerThreads = getInt(config.getProperty(WORKER_THREADS), Runtime.getRuntime().availableProcessors(), 1);
+        cacheSizeMB = getInt(config.getProperty(CACHE_SIZE_MB), DEFAULT_CACHE_SIZE_MB, 0);
 
         System.out.println("Analyzer: \t\t" + analyzerQuery.getClass());
         System.out.println("Query Builder: \t\t" + queryBuilder.getClass());
@@ -49,6 +56,23 @@ public class ClueConfiguration {
         System.out.println("IndexReader Factory: \t" + indexReaderFactory.getClass());
         System.out.println("Term Bytesref Display: \t" + termBytesRefDisplay.getClass());
         System.out.println("Payload Bytesref Display: \t" + payloadBytesRefDisplay.getClass());
+        System.out.println("Worker Threads: \t" + workerThreads);
+        System.out.println("Cache Size: \t\t" + cacheSizeMB + "MB");
+    }
+
+    private static int getInt(String value, int defaultValue, int minValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int intValue = Integer.parseInt(value.trim());
+            if (intValue >= minValue) {
+                return intValue;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        System.out.println("invalid value: " + value + ", using " + defaultValue);
+        return defaultValue;
     }
 
     private static <T> T getInstance(String className, T defaultInstance) {
@@ -111,4 +135,18 @@ public class ClueConfiguration {
     public BytesRefDisplay getPayloadBytesRefDisplay() {
         return payloadBytesRefDisplay;
     }
+
+    /**
+     * @return size of the pool running segments in parallel, for searches and scans
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * @return memory bound of the session cache of queries and results, 0 disables it
+     */
+    public int getCacheSizeMB() {
+        return cacheSizeMB;
+    }
 }
@@ -4,6 +4,8 @@ import com.senseidb.clue.api.BytesRefDisplay;
 import com.senseidb.clue.api.IndexReaderFactory;
 import com.senseidb.clue.api.QueryBuilder;
 import com.senseidb.clue.commands.*;
+import com.senseidb.clue.util.QueryResultCache;
+import com.senseidb.clue.util.SortedSetFacetState;
 import jline.console.ConsoleReader;
 import jline.console.completer.ArgumentCompleter;
 import jline.console.completer.Completer;
@@ -16,6 +18,10 @@ import org.apache.lucene.store.Directory;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClueContext {
 
@@ -29,7 +35,12 @@ public class ClueContext {
     private final Analyzer analyzerQuery;
     private final BytesRefDisplay termBytesRefDisplay;
     private final BytesRefDisplay payloadBytesRefDisplay;
+    private final int workerThreads;
+    private final QueryResultCache queryResultCache;
+    private final Map<String, SortedSetFacetState> facetStates = new HashMap<>();
+    private long readerGeneration;
     private IndexWriter writer;
+    private ExecutorService executor;
     private boolean readOnlyMode;
 
     public ClueContext(Directory dir, ClueConfiguration config, boolean interactiveMode)
@@ -43,6 +54,8 @@ public class ClueContext {
         this.writerConfig = new IndexWriterConfig(new StandardAnalyzer());
         this.termBytesRefDisplay = config.getTermBytesRefDisplay();
         this.payloadBytesRefDisplay = config.getPayloadBytesRefDisplay();
+        this.workerThreads = config.getWorkerThreads();
+        this.queryResultCache = new QueryResultCache(config.getCacheSizeMB() * 1024L * 1024L);
         this.writer = null;
         this.interactiveMode = interactiveMode;
         this.cmdMap = new TreeMap<>();
@@ -52,12 +65,25 @@ public class ClueContext {
         // registers all the commands we currently support
         new HelpCommand(this);
         new ExitCommand(this);
+        new CacheCommand(this);
         new InfoCommand(this);
+        new BlockTreeStatsCommand(this);
         new DocValCommand(this);
+        new DocValStatsCommand(this);
+        new TopValuesCommand(this);
         new SearchCommand(this);
+        new ProfileCommand(this);
+        new EstimateCommand(this);
+        new FacetCommand(this);
+        new BenchCommand(this);
+        new LoadCommand(this);
         new TermsCommand(this);
+        new TopTermsCommand(this);
         new PostingsCommand(this);
         new DocSetInfoCommand(this);
+        new DocSetEncodingCommand(this);
+        new IntersectCommand(this);
+        new PositionStatsCommand(this);
         new MergeCommand(this);
         new DeleteCommand(this);
         new ReadonlyCommand(this);
@@ -177,16 +203,66 @@ public class ClueContext {
         return writer;
     }
 
+    public synchronized ExecutorService getExecutorService() {
+        if (executor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadFactory threadFactory = r -> {
+                Thread t = new Thread(r, "clue-worker-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            executor = Executors.newFixedThreadPool(workerThreads, threadFactory);
+        }
+        return executor;
+    }
+
     public Directory getDirectory() {
         return directory;
     }
 
     public void refreshReader() throws Exception {
         readerFactory.refreshReader();
+        readerGeneration++;
+        queryResultCache.clear();
+        synchronized (facetStates) {
+            facetStates.clear();
+        }
+    }
+
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * @return facet state of a SORTED or SORTED_SET docvalues field, built on first use and kept until the reader is refreshed
+     */
+    public SortedSetFacetState getFacetState(String field) throws IOException {
+        synchronized (facetStates) {
+            SortedSetFacetState state = facetStates.get(field);
+            if (state == null) {
+                state = new SortedSetFacetState(getIndexReader(), field);
+                facetStates.put(field, state);
+            }
+            return state;
+        }
+    }
+
+    /**
+     * @return version of the current reader, changes whenever the searchable content may have
+     */
+    public long getReaderVersion() {
+        IndexReader reader = getIndexReader();
+        if (reader instanceof DirectoryReader) {
+            return ((DirectoryReader) reader).getVersion();
+        }
+        return readerGeneration;
     }
 
     public void shutdown() throws Exception {
         try {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
             readerFactory.shutdown();
         } finally {
             if (writer != null) {
@@ -0,0 +1,231 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BenchCommand extends ClueCommand {
+
+    private static final String ITERATIONS_OPTION = "--iterations";
+    private static final String THREADS_OPTION = "--threads";
+    private static final String WARMUP_OPTION = "--warmup";
+    private static final String TOPN_OPTION = "--topn";
+    private static final String USAGE = "usage: <query file> [" + ITERATIONS_OPTION + " n] [" + THREADS_OPTION
+            + " t] [" + WARMUP_OPTION + " n] [" + TOPN_OPTION + " n]";
+
+    private static final int DEFAULT_ITERATIONS = 100;
+    private static final int DEFAULT_WARMUP = 10;
+    private static final int DEFAULT_TOPN = 10;
+    private static final double[] PERCENTILES = new double[]{
+            50.0, 90.0, 99.0, 99.9
+    };
+    private static final String[] PERCENTILE_NAMES = new String[]{
+            "p50", "p90", "p99", "p999"
+    };
+
+    public BenchCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "bench";
+    }
+
+    @Override
+    public String help() {
+        return "benchmarks the queries of a file, one per line, reporting qps and latency percentiles, "
+                + "<query file> [" + ITERATIONS_OPTION + " n] [" + THREADS_OPTION + " t] [" + WARMUP_OPTION
+                + " n] [" + TOPN_OPTION + " n]";
+    }
+
+    static List<String> readQueries(String file) throws IOException {
+        List<String> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                queries.add(line);
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Runs every query the given number of times, spread over the threads.
+     *
+     * @param latencies if not null, filled with the latency of iteration i of query q at [q][i]
+     */
+    private static void run(ExecutorService pool, int numThreads, final IndexSearcher searcher, final Query[] queries,
+                            final int iterations, final int topN, final long[][] latencies) throws Exception {
+        final int total = queries.length * iterations;
+        final AtomicInteger next = new AtomicInteger();
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int t = 0; t < numThreads; ++t) {
+            futures.add(pool.submit(() -> {
+                long hits = 0L;
+                int idx;
+                while ((idx = next.getAndIncrement()) < total) {
+                    int q = idx % queries.length;
+                    long start = System.nanoTime();
+                    hits += searcher.search(queries[q], topN).totalHits;
+                    long latency = System.nanoTime() - start;
+                    if (latencies != null) {
+                        latencies[q][idx / queries.length] = latency;
+                    }
+                }
+                return hits;
+            }));
+        }
+        for (Future<Long> future : futures) {
+            future.get();
+        }
+    }
+
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        int idx = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+    }
+
+    private static String latencyString(long[] sorted) {
+        long sum = 0L;
+        for (long latency : sorted) {
+            sum += latency;
+        }
+        StringBuilder buf = new StringBuilder();
+        buf.append(String.format("mean: %.3f", sorted.length == 0 ? 0.0 : sum / 1000000.0 / sorted.length));
+        for (int i = 0; i < PERCENTILES.length; ++i) {
+            buf.append(String.format(", %s: %.3f", PERCENTILE_NAMES[i], percentile(sorted, PERCENTILES[i]) / 1000000.0));
+        }
+        buf.append(String.format(", max: %.3f", sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1000000.0));
+        return buf.toString();
+    }
+
+    private static int parseOption(String name, String value, PrintStream out) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        out.println("invalid " + name + ": " + value);
+        return -1;
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        String file = null;
+        int iterations = DEFAULT_ITERATIONS;
+        int numThreads = 1;
+        int warmup = DEFAULT_WARMUP;
+        int topN = DEFAULT_TOPN;
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            if ((ITERATIONS_OPTION.equals(arg) || THREADS_OPTION.equals(arg) || WARMUP_OPTION.equals(arg)
+                    || TOPN_OPTION.equals(arg)) && i + 1 < args.length) {
+                int n = parseOption(arg.substring(2), args[++i], out);
+                if (n < 0) {
+                    return;
+                }
+                if (ITERATIONS_OPTION.equals(arg)) {
+                    iterations = n;
+                } else if (THREADS_OPTION.equals(arg)) {
+                    numThreads = n;
+                } else if (WARMUP_OPTION.equals(arg)) {
+                    warmup = n;
+                } else {
+                    topN = n;
+                }
+            } else if (file == null) {
+                file = arg;
+            } else {
+                out.println(USAGE);
+                return;
+            }
+        }
+        if (file == null || iterations == 0 || numThreads == 0 || topN == 0) {
+            out.println(USAGE);
+            return;
+        }
+
+        List<String> queryStrings;
+        try {
+            queryStrings = readQueries(file);
+        } catch (IOException e) {
+            out.println("unable to read queries from: " + file);
+            return;
+        }
+
+        List<String> parsedStrings = new ArrayList<>();
+        List<Query> parsed = new ArrayList<>();
+        for (String queryString : queryStrings) {
+            try {
+                parsed.add(ctx.getQueryBuilder().build(queryString));
+                parsedStrings.add(queryString);
+            } catch (Exception e) {
+                out.println("skipping, cannot parse query: " + queryString + ", " + e.getMessage());
+            }
+        }
+        if (parsed.isEmpty()) {
+            out.println("no queries to run");
+            return;
+        }
+        Query[] queries = parsed.toArray(new Query[parsed.size()]);
+
+        // each query runs on a single bench thread, the threads give the concurrency
+        IndexSearcher searcher = new IndexSearcher(ctx.getIndexReader());
+        long[][] latencies = new long[queries.length][iterations];
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, "clue-bench");
+            t.setDaemon(true);
+            return t;
+        });
+        long start, end;
+        try {
+            if (warmup > 0) {
+                run(pool, numThreads, searcher, queries, warmup, topN, null);
+            }
+            start = System.nanoTime();
+            run(pool, numThreads, searcher, queries, iterations, topN, latencies);
+            end = System.nanoTime();
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        long numSearches = (long) queries.length * iterations;
+        double seconds = (end - start) / 1000000000.0;
+        long[] all = new long[(int) numSearches];
+        out.println("queries: " + queries.length + ", iterations: " + iterations + ", warmup: " + warmup
+                + ", threads: " + numThreads + ", topn: " + topN);
+        out.println("latencies in ms");
+        for (int q = 0; q < queries.length; ++q) {
+            long[] sorted = latencies[q];
+            System.arraycopy(sorted, 0, all, q * iterations, iterations);
+            Arrays.sort(sorted);
+            out.println("[" + q + "] " + parsedStrings.get(q));
+            out.println("\t" + latencyString(sorted));
+        }
+        Arrays.sort(all);
+        out.println(String.format("overall: %d searches in %.3fs, qps: %.1f", numSearches, seconds, numSearches / seconds));
+        out.println("\t" + latencyString(all));
+        out.flush();
+    }
+}
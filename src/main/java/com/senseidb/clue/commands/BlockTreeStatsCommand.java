@@ -0,0 +1,144 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.LeafTaskRunner;
+import org.apache.lucene.codecs.blocktree.FieldReader;
+import org.apache.lucene.codecs.blocktree.Stats;
+import org.apache.lucene.index.*;
+
+import java.io.PrintStream;
+import java.util.*;
+
+public class BlockTreeStatsCommand extends ClueCommand {
+
+    public BlockTreeStatsCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "blocktree";
+    }
+
+    @Override
+    public String help() {
+        return "block tree terms dictionary stats per segment and field, <field> <segment number>, all if not specified";
+    }
+
+    private static class BlockStats {
+        long indexNumBytes;
+        long totalTermCount;
+        long totalTermBytes;
+        long nonFloorBlockCount;
+        long floorBlockCount;
+        long floorSubBlockCount;
+        long mixedBlockCount;
+        long termsOnlyBlockCount;
+        long subBlocksOnlyBlockCount;
+        long totalBlockCount;
+        long totalBlockSuffixBytes;
+        long totalBlockStatsBytes;
+        long totalBlockOtherBytes;
+
+        void add(Stats stats) {
+            indexNumBytes += stats.indexNumBytes;
+            totalTermCount += stats.totalTermCount;
+            totalTermBytes += stats.totalTermBytes;
+            nonFloorBlockCount += stats.nonFloorBlockCount;
+            floorBlockCount += stats.floorBlockCount;
+            floorSubBlockCount += stats.floorSubBlockCount;
+            mixedBlockCount += stats.mixedBlockCount;
+            termsOnlyBlockCount += stats.termsOnlyBlockCount;
+            subBlocksOnlyBlockCount += stats.subBlocksOnlyBlockCount;
+            totalBlockCount += stats.totalBlockCount;
+            totalBlockSuffixBytes += stats.totalBlockSuffixBytes;
+            totalBlockStatsBytes += stats.totalBlockStatsBytes;
+            totalBlockOtherBytes += stats.totalBlockOtherBytes;
+        }
+
+        void print(PrintStream out) {
+            double avgTermLength = totalTermCount == 0 ? 0.0 : (double) totalTermBytes / totalTermCount;
+            double avgSuffixLength = totalTermCount == 0 ? 0.0 : (double) totalBlockSuffixBytes / totalTermCount;
+            double termsPerBlock = totalBlockCount == 0 ? 0.0 : (double) totalTermCount / totalBlockCount;
+            out.println(String.format("terms:\t\t%d, term bytes: %d, avg term length: %.2f",
+                    totalTermCount, totalTermBytes, avgTermLength));
+            out.println(String.format("blocks:\t\t%d, terms per block: %.2f, non-floor: %d, floor: %d, floor sub-blocks: %d",
+                    totalBlockCount, termsPerBlock, nonFloorBlockCount, floorBlockCount, floorSubBlockCount));
+            out.println(String.format("block types:\tterms only: %d, sub-blocks only: %d, mixed: %d",
+                    termsOnlyBlockCount, subBlocksOnlyBlockCount, mixedBlockCount));
+            out.println("index (fst):\t" + indexNumBytes + " bytes");
+            out.println(String.format("block bytes:\tsuffix: %d, avg suffix length: %.2f, stats: %d, other: %d",
+                    totalBlockSuffixBytes, avgSuffixLength, totalBlockStatsBytes, totalBlockOtherBytes));
+        }
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        IndexReader reader = ctx.getIndexReader();
+        List<LeafReaderContext> leaves = reader.leaves();
+
+        final String field = args.length > 0 ? args[0] : null;
+        if (args.length > 1) {
+            int segid;
+            try {
+                segid = Integer.parseInt(args[1]);
+                if (segid < 0 || segid >= leaves.size()) {
+                    throw new IllegalArgumentException("invalid segment");
+                }
+            } catch (Exception e) {
+                out.println("segment id must be a number between 0 and " + (leaves.size() - 1));
+                return;
+            }
+            leaves = Collections.singletonList(leaves.get(segid));
+        }
+
+        // walking the block tree reads the whole terms dictionary, so segments are done in parallel
+        List<SortedMap<String, Stats>> segmentStats = LeafTaskRunner.run(ctx.getExecutorService(), leaves, leaf -> {
+            SortedMap<String, Stats> fieldStats = new TreeMap<>();
+            Fields fields = leaf.reader().fields();
+            for (String name : fields) {
+                if (field != null && !field.equals(name)) continue;
+                Terms terms = fields.terms(name);
+                if (terms instanceof FieldReader) {
+                    fieldStats.put(name, ((FieldReader) terms).getStats());
+                }
+            }
+            return fieldStats;
+        });
+
+        SortedMap<String, BlockStats> totals = new TreeMap<>();
+        for (int i = 0; i < leaves.size(); ++i) {
+            LeafReaderContext leaf = leaves.get(i);
+            for (Map.Entry<String, Stats> entry : segmentStats.get(i).entrySet()) {
+                Stats stats = entry.getValue();
+                out.println("=================================== Segment " + leaf.ord + " (" + stats.segment
+                        + "), Field " + entry.getKey() + " ===================================");
+                BlockStats blockStats = new BlockStats();
+                blockStats.add(stats);
+                blockStats.print(out);
+
+                BlockStats total = totals.get(entry.getKey());
+                if (total == null) {
+                    total = new BlockStats();
+                    totals.put(entry.getKey(), total);
+                }
+                total.add(stats);
+            }
+        }
+
+        if (totals.isEmpty()) {
+            out.println("no block tree terms found" + (field == null ? "" : " for field: " + field));
+            out.flush();
+            return;
+        }
+
+        if (leaves.size() > 1) {
+            for (Map.Entry<String, BlockStats> entry : totals.entrySet()) {
+                out.println("=================================== All segments, Field " + entry.getKey()
+                        + " ===================================");
+                entry.getValue().print(out);
+            }
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,42 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.QueryResultCache;
+
+import java.io.PrintStream;
+
+public class CacheCommand extends ClueCommand {
+
+    public CacheCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "cache";
+    }
+
+    @Override
+    public String help() {
+        return "shows hit and miss counts of the session query and result cache, <clear> to empty it, <reset> to zero the counts";
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        QueryResultCache cache = ctx.getQueryResultCache();
+        if (args.length > 0) {
+            if ("clear".equals(args[0])) {
+                cache.clear();
+            } else if ("reset".equals(args[0])) {
+                cache.resetCounters();
+            } else {
+                out.println("usage: [clear|reset]");
+                return;
+            }
+        }
+        out.println("entries: " + cache.size() + ", bytes: " + cache.ramBytesUsed() + ", max bytes: " + cache.getMaxBytes());
+        out.println("queries hits: " + cache.getQueryHits() + ", misses: " + cache.getQueryMisses());
+        out.println("topdocs hits: " + cache.getTopDocsHits() + ", misses: " + cache.getTopDocsMisses());
+        out.flush();
+    }
+}
@@ -0,0 +1,316 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.api.BytesRefPrinter;
+import com.senseidb.clue.util.EliasFanoDocIds;
+import com.senseidb.clue.util.IntArrayDocIdSetIterator;
+import com.senseidb.clue.util.LeafTaskRunner;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RoaringDocIdSet;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+
+public class DocSetEncodingCommand extends ClueCommand {
+
+    private static final String TOP_OPTION = "--top";
+    private static final String USAGE = "usage: field:term | field " + TOP_OPTION + " <n>";
+
+    // same block size as the lucene50 postings format
+    private static final int PACKED_BLOCK_SIZE = 128;
+
+    private static final String INT_BLOCK_TERM_STATE =
+            "org.apache.lucene.codecs.lucene50.Lucene50PostingsFormat$IntBlockTermState";
+
+    private static final int DECODE_ROUNDS = 5;
+
+    private static final int CODEC = 0;
+    private static final int BITSET = 1;
+    private static final int ROARING = 2;
+    private static final int PACKED_DELTAS = 3;
+    private static final int ELIAS_FANO = 4;
+    private static final String[] ENCODINGS = new String[]{
+            "codec", "bitset", "roaring", "packed deltas", "elias-fano"
+    };
+
+    public DocSetEncodingCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "docsetenc";
+    }
+
+    @Override
+    public String help() {
+        return "size and decode cost of posting lists under other encodings, <field:term> or <field> " + TOP_OPTION + " <n>";
+    }
+
+    private static class EncodingStats {
+        long docs;
+        // posting lists, one per term and segment
+        long lists;
+        // posting lists whose codec size is not known, left out of the codec bytes
+        long codecUnknownLists;
+        long codecUnknownDocs;
+        final long[] bytes = new long[ENCODINGS.length];
+        final long[] decodeNanos = new long[ENCODINGS.length];
+
+        void add(EncodingStats other) {
+            docs += other.docs;
+            lists += other.lists;
+            codecUnknownLists += other.codecUnknownLists;
+            codecUnknownDocs += other.codecUnknownDocs;
+            for (int i = 0; i < ENCODINGS.length; ++i) {
+                bytes[i] += other.bytes[i];
+                decodeNanos[i] += other.decodeNanos[i];
+            }
+        }
+
+        void print(PrintStream out) {
+            out.println(String.format("%-14s %12s %12s %12s", "encoding", "bytes", "bits/doc", "ns/doc"));
+            for (int i = 0; i < ENCODINGS.length; ++i) {
+                long sizedDocs = i == CODEC ? docs - codecUnknownDocs : docs;
+                boolean unknown = i == CODEC && codecUnknownLists == lists;
+                double bitsPerDoc = sizedDocs == 0 ? 0.0 : bytes[i] * 8.0 / sizedDocs;
+                double nsPerDoc = docs == 0 ? 0.0 : (double) decodeNanos[i] / docs;
+                out.println(String.format("%-14s %12s %12s %12.2f", ENCODINGS[i],
+                        unknown ? "n/a" : String.valueOf(bytes[i]),
+                        unknown ? "n/a" : String.format("%.2f", bitsPerDoc), nsPerDoc));
+            }
+            if (codecUnknownLists > 0 && codecUnknownLists < lists) {
+                out.println("codec bytes exclude " + codecUnknownLists + " of " + lists + " posting lists ("
+                        + codecUnknownDocs + " docs) of unknown size");
+            }
+        }
+    }
+
+    private static long drain(DocIdSetIterator iter) throws IOException {
+        long sum = 0L;
+        for (int doc = iter.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iter.nextDoc()) {
+            sum += doc;
+        }
+        return sum;
+    }
+
+    private interface Decoder {
+        // returns the sum of the decoded docids
+        long decode() throws IOException;
+    }
+
+    /**
+     * Fastest of a few decoding rounds, the first ones also warm up the jit.
+     */
+    private static long timeDecode(Decoder decoder, long expectedSum) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < DECODE_ROUNDS; ++i) {
+            long start = System.nanoTime();
+            long sum = decoder.decode();
+            best = Math.min(best, System.nanoTime() - start);
+            if (sum != expectedSum) {
+                throw new IllegalStateException("decoded docids do not match the postings");
+            }
+        }
+        return best;
+    }
+
+    /**
+     * File pointer into the .doc file and the inlined singleton docid of a lucene50 term state.
+     * The state class is package private, so its fields are read reflectively, null if not available.
+     */
+    private static long[] docStartFP(TermState state) {
+        if (state == null || !INT_BLOCK_TERM_STATE.equals(state.getClass().getName())) {
+            return null;
+        }
+        try {
+            Field docStartFP = state.getClass().getDeclaredField("docStartFP");
+            Field singletonDocID = state.getClass().getDeclaredField("singletonDocID");
+            docStartFP.setAccessible(true);
+            singletonDocID.setAccessible(true);
+            return new long[]{docStartFP.getLong(state), singletonDocID.getInt(state)};
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Bytes of the .doc file used by the term, including freqs and skip data when indexed.
+     * Taken from the file pointer of the next term, so it is unknown for the last term of a field.
+     */
+    private static long codecBytes(TermsEnum te) throws IOException {
+        long[] state = docStartFP(te.termState());
+        if (state == null) {
+            return -1L;
+        }
+        if (state[1] != -1) {
+            // inlined into the terms dictionary
+            return 0L;
+        }
+        if (te.next() == null) {
+            return -1L;
+        }
+        long[] nextState = docStartFP(te.termState());
+        return nextState == null ? -1L : nextState[0] - state[0];
+    }
+
+    private static EncodingStats[] segmentEncodings(LeafReader reader, String field, BytesRef[] terms) throws IOException {
+        EncodingStats[] stats = new EncodingStats[terms.length];
+        Terms fieldTerms = reader.terms(field);
+        if (fieldTerms == null) {
+            return stats;
+        }
+        int maxDoc = reader.maxDoc();
+        TermsEnum te = fieldTerms.iterator();
+        PostingsEnum postings = null;
+        int[] docids = new int[0];
+        for (int t = 0; t < terms.length; ++t) {
+            if (!te.seekExact(terms[t])) {
+                continue;
+            }
+            EncodingStats termStats = new EncodingStats();
+            stats[t] = termStats;
+
+            int count = 0;
+            long sum = 0L;
+            postings = te.postings(postings, PostingsEnum.NONE);
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                docids = ArrayUtil.grow(docids, count + 1);
+                docids[count++] = doc;
+                sum += doc;
+            }
+            final int numDocs = count;
+            termStats.docs = numDocs;
+            int[] docs = Arrays.copyOf(docids, numDocs);
+
+            termStats.decodeNanos[CODEC] = timeDecode(() -> drain(te.postings(null, PostingsEnum.NONE)), sum);
+            termStats.lists = 1;
+            long codecBytes = codecBytes(te);
+            if (codecBytes < 0) {
+                termStats.codecUnknownLists = 1;
+                termStats.codecUnknownDocs = numDocs;
+            } else {
+                termStats.bytes[CODEC] = codecBytes;
+            }
+
+            FixedBitSet bitSet = new FixedBitSet(maxDoc);
+            for (int doc : docs) {
+                bitSet.set(doc);
+            }
+            termStats.bytes[BITSET] = bitSet.ramBytesUsed();
+            termStats.decodeNanos[BITSET] = timeDecode(() -> drain(new BitSetIterator(bitSet, numDocs)), sum);
+
+            RoaringDocIdSet.Builder roaringBuilder = new RoaringDocIdSet.Builder(maxDoc);
+            roaringBuilder.add(new IntArrayDocIdSetIterator(docs));
+            RoaringDocIdSet roaring = roaringBuilder.build();
+            termStats.bytes[ROARING] = roaring.ramBytesUsed();
+            termStats.decodeNanos[ROARING] = timeDecode(() -> drain(roaring.iterator()), sum);
+
+            PackedLongValues.Builder packedBuilder = PackedLongValues.packedBuilder(PACKED_BLOCK_SIZE, PackedInts.COMPACT);
+            int prev = 0;
+            for (int doc : docs) {
+                packedBuilder.add(doc - prev);
+                prev = doc;
+            }
+            PackedLongValues packed = packedBuilder.build();
+            termStats.bytes[PACKED_DELTAS] = packed.ramBytesUsed();
+            termStats.decodeNanos[PACKED_DELTAS] = timeDecode(() -> drainPacked(packed), sum);
+
+            EliasFanoDocIds eliasFano = new EliasFanoDocIds(docs, numDocs, maxDoc);
+            termStats.bytes[ELIAS_FANO] = eliasFano.ramBytesUsed();
+            termStats.decodeNanos[ELIAS_FANO] = timeDecode(() -> drain(eliasFano.iterator()), sum);
+        }
+        return stats;
+    }
+
+    private static long drainPacked(PackedLongValues packed) {
+        long sum = 0L;
+        long doc = 0L;
+        PackedLongValues.Iterator iter = packed.iterator();
+        while (iter.hasNext()) {
+            doc += iter.next();
+            sum += doc;
+        }
+        return sum;
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        if (args.length < 1) {
+            out.println(USAGE);
+            return;
+        }
+
+        IndexReader reader = ctx.getIndexReader();
+        List<LeafReaderContext> leaves = reader.leaves();
+
+        final String field;
+        final BytesRef[] terms;
+        String[] parts = args[0].split(":", 2);
+        if (parts.length == 2) {
+            field = parts[0];
+            terms = new BytesRef[]{new BytesRef(parts[1])};
+        } else if (args.length > 2 && TOP_OPTION.equals(args[1])) {
+            field = parts[0];
+            int n;
+            try {
+                n = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                out.println("invalid number of terms: " + args[2]);
+                return;
+            }
+            if (n <= 0) {
+                out.println("number of terms must be positive");
+                return;
+            }
+            terms = TopTermsCommand.topTerms(ctx.getExecutorService(), leaves, field, n, false).terms;
+        } else {
+            out.println(USAGE);
+            return;
+        }
+
+        List<EncodingStats[]> segmentStats = LeafTaskRunner.run(ctx.getExecutorService(), leaves,
+                leaf -> segmentEncodings(leaf.reader(), field, terms));
+
+        BytesRefPrinter bytesRefPrinter = ctx.getTermBytesRefDisplay().getBytesRefPrinter(field);
+        EncodingStats total = new EncodingStats();
+        int numFound = 0;
+        for (int t = 0; t < terms.length; ++t) {
+            EncodingStats termStats = new EncodingStats();
+            int numSegments = 0;
+            for (EncodingStats[] segment : segmentStats) {
+                if (segment[t] != null) {
+                    termStats.add(segment[t]);
+                    numSegments++;
+                }
+            }
+            if (numSegments == 0) {
+                out.println("term not found: " + field + ":" + bytesRefPrinter.print(terms[t]));
+                continue;
+            }
+            numFound++;
+            out.println("=================================== " + field + ":" + bytesRefPrinter.print(terms[t])
+                    + ", docs: " + termStats.docs + ", segments: " + numSegments + " ===================================");
+            termStats.print(out);
+            total.add(termStats);
+        }
+
+        if (numFound > 1) {
+            out.println("=================================== All " + numFound + " terms, docs: " + total.docs
+                    + " ===================================");
+            total.print(out);
+        }
+        out.println("codec is bytes in the .doc file including freqs and skip data, the others are bytes on heap");
+        out.flush();
+    }
+}
@@ -1,11 +1,14 @@
 package com.senseidb.clue.commands;
 
 import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.LeafTaskRunner;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BytesRef;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -27,7 +30,7 @@ public class DocSetInfoCommand extends ClueCommand {
 
     @Override
     public String help() {
-        return "doc id set info and stats";
+        return "doc id set info and stats across the index, including docid gaps, <field:term> <bucket size>";
     }
 
     @Override
@@ -63,65 +66,157 @@ public class DocSetInfoCommand extends ClueCommand {
 
         IndexReader reader = ctx.getIndexReader();
         List<LeafReaderContext> leaves = reader.leaves();
-
-
-        PostingsEnum postingsEnum = null;
-        for (LeafReaderContext leaf : leaves) {
-            LeafReader atomicReader = leaf.reader();
-            Terms terms = atomicReader.terms(field);
+        BytesRef term = new BytesRef(termVal);
+
+        // docFreq of every segment first, so each segment knows which global ranks are its percentiles
+        final TermsEnum[] termsEnums = new TermsEnum[leaves.size()];
+        final long[] rankBase = new long[leaves.size()];
+        long docFreq = 0L;
+        for (int i = 0; i < leaves.size(); ++i) {
+            rankBase[i] = docFreq;
+            Terms terms = leaves.get(i).reader().terms(field);
             if (terms == null) {
                 continue;
             }
             TermsEnum te = terms.iterator();
+            if (te.seekExact(term)) {
+                termsEnums[i] = te;
+                docFreq += te.docFreq();
+            }
+        }
 
-            if (te.seekExact(new BytesRef(termVal))) {
-                postingsEnum = te.postings(postingsEnum, PostingsEnum.FREQS);
-
-                int docFreq = te.docFreq();
+        if (docFreq == 0) {
+            out.println("term not found: " + field + ":" + termVal);
+            out.flush();
+            return;
+        }
 
-                int minDocId = -1, maxDocId = -1;
-                int doc, count = 0;
+        final long[] percentileRanks = new long[PERCENTILES.length];
+        for (int i = 0; i < PERCENTILES.length; ++i) {
+            percentileRanks[i] = Math.min(docFreq, (long) (PERCENTILES[i] * docFreq / 100.0) + 1);
+        }
 
-                int[] percentDocs = new int[PERCENTILES.length];
+        final int buckets = bucketSize;
+        List<SegmentDocSet> segmentDocSets = LeafTaskRunner.run(ctx.getExecutorService(), leaves, leaf -> {
+            TermsEnum te = termsEnums[leaf.ord];
+            if (te == null) {
+                return null;
+            }
+            return scanSegment(te, leaf, rankBase[leaf.ord], percentileRanks, buckets);
+        });
+
+        int minDocId = -1, maxDocId = -1;
+        int[] percentDocs = new int[PERCENTILES.length];
+        long[] gapCounts = new long[Integer.SIZE];
+        List<SegmentDocSet> found = new ArrayList<>();
+        for (SegmentDocSet docSet : segmentDocSets) {
+            if (docSet == null || docSet.first < 0) {
+                continue;
+            }
+            if (maxDocId >= 0) {
+                // the gap across the segment boundary
+                gapCounts[gapBucket(docSet.first - maxDocId)]++;
+            }
+            if (minDocId < 0) {
+                minDocId = docSet.first;
+            }
+            maxDocId = docSet.last;
+            for (int i = 0; i < percentDocs.length; ++i) {
+                if (docSet.percentileDocs[i] >= 0) {
+                    percentDocs[i] = docSet.percentileDocs[i];
+                }
+            }
+            for (int i = 0; i < gapCounts.length; ++i) {
+                gapCounts[i] += docSet.gapCounts[i];
+            }
+            found.add(docSet);
+        }
 
-                int percentileIdx = 0;
+        int[] histogram = null;
+        if (maxDocId >= 0) {
+            histogram = new int[maxDocId / bucketSize + 1];
+            for (SegmentDocSet docSet : found) {
+                // segment buckets run to the end of the segment, the histogram only to the last doc
+                int numBuckets = Math.min(docSet.buckets.length, histogram.length - docSet.bucketOffset);
+                for (int i = 0; i < numBuckets; ++i) {
+                    histogram[docSet.bucketOffset + i] += docSet.buckets[i];
+                }
+            }
+        }
 
-                while ((doc = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-                    maxDocId = doc;
-                    if (minDocId == -1) {
-                        minDocId = doc;
-                    }
-                    count++;
+        double density = (double) docFreq / (double) (maxDocId - minDocId);
+        out.println(String.format("min: %d, max: %d, count: %d, density: %.2f, segments: %d",
+                minDocId, maxDocId, docFreq, density, found.size()));
+        out.println("percentiles: " + Arrays.toString(PERCENTILES) + " => " + Arrays.toString(percentDocs));
+        out.println("histogram: (bucketsize=" + bucketSize + ")");
+        out.println(Arrays.toString(histogram));
+
+        long numGaps = 0L;
+        long gapBits = 0L;
+        for (int i = 0; i < gapCounts.length; ++i) {
+            numGaps += gapCounts[i];
+            gapBits += gapCounts[i] * (i + 1);
+        }
+        out.println("gaps: (bucket [2^k, 2^(k+1)) needs k+1 bits)");
+        for (int i = 0; i < gapCounts.length; ++i) {
+            if (gapCounts[i] > 0) {
+                out.println(String.format("[%d, %d): %d", 1L << i, 1L << (i + 1), gapCounts[i]));
+            }
+        }
+        if (numGaps > 0) {
+            out.println(String.format("avg bits per gap: %.2f", (double) gapBits / (double) numGaps));
+        }
+        out.flush();
+    }
 
-                    double perDocs = (double) count / (double) docFreq * 100.0;
-                    while (percentileIdx < percentDocs.length) {
-                        if (perDocs > PERCENTILES[percentileIdx]) {
-                            percentDocs[percentileIdx] = doc;
-                            percentileIdx++;
-                        } else {
-                            break;
-                        }
-                    }
-                }
+    private static class SegmentDocSet {
+        int first = -1;
+        int last = -1;
+        int[] percentileDocs;
+        int bucketOffset;
+        int[] buckets;
+        final long[] gapCounts = new long[Integer.SIZE];
+    }
 
-                // calculate histogram
-                int[] buckets = null;
-                if (maxDocId > 0) {
-                    buckets = new int[maxDocId / bucketSize + 1];
+    private static int gapBucket(int gap) {
+        return 31 - Integer.numberOfLeadingZeros(gap);
+    }
 
-                    postingsEnum = te.postings(postingsEnum, PostingsEnum.FREQS);
-                    while ((doc = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-                        int bucketIdx = doc / bucketSize;
-                        buckets[bucketIdx]++;
-                    }
-                }
+    /**
+     * Single pass over the postings of the segment, all docids are global.
+     */
+    private static SegmentDocSet scanSegment(TermsEnum te, LeafReaderContext leaf, long rankBase,
+                                             long[] percentileRanks, int bucketSize) throws IOException {
+        SegmentDocSet docSet = new SegmentDocSet();
+        int docBase = leaf.docBase;
+        int maxDoc = leaf.reader().maxDoc();
+        docSet.bucketOffset = docBase / bucketSize;
+        docSet.buckets = new int[(docBase + maxDoc - 1) / bucketSize - docSet.bucketOffset + 1];
+        docSet.percentileDocs = new int[percentileRanks.length];
+        Arrays.fill(docSet.percentileDocs, -1);
+
+        int percentileIdx = 0;
+        while (percentileIdx < percentileRanks.length && percentileRanks[percentileIdx] <= rankBase) {
+            percentileIdx++;
+        }
 
-                double density = (double) docFreq / (double) (maxDocId - minDocId);
-                out.println(String.format("min: %d, max: %d, count: %d, density: %.2f", minDocId, maxDocId, docFreq, density));
-                out.println("percentiles: " + Arrays.toString(PERCENTILES) + " => " + Arrays.toString(percentDocs));
-                out.println("histogram: (bucketsize=" + bucketSize + ")");
-                out.println(Arrays.toString(buckets));
+        PostingsEnum postingsEnum = te.postings(null, PostingsEnum.NONE);
+        long rank = rankBase;
+        int doc;
+        while ((doc = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            int globalDoc = docBase + doc;
+            rank++;
+            if (docSet.first < 0) {
+                docSet.first = globalDoc;
+            } else {
+                docSet.gapCounts[gapBucket(globalDoc - docSet.last)]++;
+            }
+            docSet.last = globalDoc;
+            docSet.buckets[globalDoc / bucketSize - docSet.bucketOffset]++;
+            while (percentileIdx < percentileRanks.length && percentileRanks[percentileIdx] == rank) {
+                docSet.percentileDocs[percentileIdx++] = globalDoc;
             }
         }
+        return docSet;
     }
 }
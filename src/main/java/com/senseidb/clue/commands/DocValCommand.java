@@ -1,17 +1,20 @@
 package com.senseidb.clue.commands;
 
 import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.BufferedByteWriter;
+import com.senseidb.clue.util.DocIdLookup;
 import org.apache.lucene.index.*;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.ArrayList;
 import java.util.List;
 
 public class DocValCommand extends ClueCommand {
 
     private static final String NUM_TERMS_IN_FIELD = "numTerms in field: ";
+    private static final String DUMP_OPTION = "--dump";
 
     public DocValCommand(ClueContext ctx) {
         super(ctx);
@@ -24,7 +27,8 @@ public class DocValCommand extends ClueCommand {
 
     @Override
     public String help() {
-        return "gets doc value for a given doc, <field> <docid>, if <docid> not specified, all docs are shown";
+        return "gets doc value for a given doc, <field> <docids|@file|->, if <docids> not specified, all docs are shown, "
+                + "<field> --dump streams all values";
     }
 
     private void showDocId(int docid, int docBase,
@@ -130,60 +134,187 @@ public class DocValCommand extends ClueCommand {
         return docVals;
     }
 
-    private void showDocId(int docid, int docBase, String field,
-                           LeafReader atomicReader, PrintStream out, int segmentid)
-            throws Exception {
-        FieldInfo finfo = atomicReader.getFieldInfos().fieldInfo(field);
+    private void showDocIds(final String field, List<LeafReaderContext> leaves, int[] docids,
+                            final PrintStream out) throws Exception {
+        final BytesRef bref = new BytesRef();
+        DocIdLookup.lookup(leaves, docids, new DocIdLookup.SegmentVisitor() {
+            int segmentid;
+            LeafReaderContext leaf;
+            DocValuesType docValType;
+            Object docVals;
 
-        if (finfo == null || finfo.getDocValuesType() == DocValuesType.NONE) {
-            out.println("docvalue does not exist for field: " + field);
-            return;
+            @Override
+            public void startSegment(int segmentIdx, LeafReaderContext leaf) throws Exception {
+                this.segmentid = segmentIdx;
+                this.leaf = leaf;
+                FieldInfo finfo = leaf.reader().getFieldInfos().fieldInfo(field);
+                docValType = finfo == null ? DocValuesType.NONE : finfo.getDocValuesType();
+                docVals = readDocValues(field, docValType, leaf.reader());
+            }
+
+            @Override
+            public void visit(int docid, int subid) throws Exception {
+                if (docValType == DocValuesType.NONE) {
+                    out.println("docvalue does not exist for field: " + field + ", segment: " + segmentid
+                            + ", docid: " + docid);
+                    return;
+                }
+                showDocId(docid, leaf.docBase, docVals, docValType, bref, out, segmentid);
+            }
+
+            @Override
+            public void outOfRange(int docid) {
+                out.println("docid out of range: " + docid);
+            }
+        });
+    }
+
+    private static int dumpLeaf(String field, DocValuesType docValType, LeafReaderContext leaf,
+                                BufferedByteWriter writer) throws IOException {
+        LeafReader atomicReader = leaf.reader();
+        Bits liveDocs = atomicReader.getLiveDocs();
+        int maxDoc = atomicReader.maxDoc();
+        int docBase = leaf.docBase;
+        int rows = 0;
+
+        switch (docValType) {
+            case NUMERIC: {
+                NumericDocValues dv = atomicReader.getNumericDocValues(field);
+                Bits docsWithField = atomicReader.getDocsWithField(field);
+                for (int k = 0; k < maxDoc; ++k) {
+                    if ((liveDocs != null && !liveDocs.get(k)) || !docsWithField.get(k)) continue;
+                    writer.write(docBase + k).tab().write(dv.get(k)).newLine();
+                    rows++;
+                }
+                break;
+            }
+            case BINARY: {
+                BinaryDocValues dv = atomicReader.getBinaryDocValues(field);
+                Bits docsWithField = atomicReader.getDocsWithField(field);
+                for (int k = 0; k < maxDoc; ++k) {
+                    if ((liveDocs != null && !liveDocs.get(k)) || !docsWithField.get(k)) continue;
+                    writer.write(docBase + k).tab().write(dv.get(k)).newLine();
+                    rows++;
+                }
+                break;
+            }
+            case SORTED: {
+                SortedDocValues dv = atomicReader.getSortedDocValues(field);
+                for (int k = 0; k < maxDoc; ++k) {
+                    if (liveDocs != null && !liveDocs.get(k)) continue;
+                    int ord = dv.getOrd(k);
+                    if (ord < 0) continue;
+                    writer.write(docBase + k).tab().write(dv.lookupOrd(ord)).newLine();
+                    rows++;
+                }
+                break;
+            }
+            case SORTED_SET: {
+                SortedSetDocValues dv = atomicReader.getSortedSetDocValues(field);
+                for (int k = 0; k < maxDoc; ++k) {
+                    if (liveDocs != null && !liveDocs.get(k)) continue;
+                    dv.setDocument(k);
+                    long ord = dv.nextOrd();
+                    if (ord == SortedSetDocValues.NO_MORE_ORDS) continue;
+                    writer.write(docBase + k);
+                    do {
+                        writer.tab().write(dv.lookupOrd(ord));
+                    } while ((ord = dv.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS);
+                    writer.newLine();
+                    rows++;
+                }
+                break;
+            }
+            case SORTED_NUMERIC: {
+                SortedNumericDocValues dv = atomicReader.getSortedNumericDocValues(field);
+                for (int k = 0; k < maxDoc; ++k) {
+                    if (liveDocs != null && !liveDocs.get(k)) continue;
+                    dv.setDocument(k);
+                    int count = dv.count();
+                    if (count == 0) continue;
+                    writer.write(docBase + k);
+                    for (int i = 0; i < count; ++i) {
+                        writer.tab().write(dv.valueAt(i));
+                    }
+                    writer.newLine();
+                    rows++;
+                }
+                break;
+            }
+            default:
+                break;
         }
+        return rows;
+    }
 
+    /**
+     * Streams every live document having a value as "docid&lt;TAB&gt;value[&lt;TAB&gt;value...]",
+     * opening the docvalues of each segment only once.
+     */
+    private void dumpDocValues(String field, List<LeafReaderContext> leaves, PrintStream out) throws IOException {
+        long rows = 0L;
+        long start = System.nanoTime();
+        boolean found = false;
+        try (BufferedByteWriter writer = new BufferedByteWriter(out)) {
+            for (LeafReaderContext leaf : leaves) {
+                FieldInfo finfo = leaf.reader().getFieldInfos().fieldInfo(field);
+                if (finfo == null || finfo.getDocValuesType() == DocValuesType.NONE) {
+                    continue;
+                }
+                found = true;
+                rows += dumpLeaf(field, finfo.getDocValuesType(), leaf, writer);
+            }
+        }
 
-        DocValuesType docValType = finfo.getDocValuesType();
-        BytesRef bref = new BytesRef();
+        if (!found) {
+            out.println("docvalue does not exist for field: " + field);
+            return;
+        }
 
-        showDocId(docid, docBase, readDocValues(field, docValType, atomicReader), docValType, bref, out, segmentid);
+        // summary goes to stderr so the dump itself can be piped as is
+        long elapsedMs = Math.max(1L, (System.nanoTime() - start) / 1000000L);
+        System.err.println("dumped " + rows + " rows in " + elapsedMs + "ms, "
+                + (rows * 1000L / elapsedMs) + " rows/sec");
     }
 
     @Override
     public void execute(String[] args, PrintStream out) throws Exception {
         if (args.length < 1) {
-            out.println("usage: field doc1,doc2...");
+            out.println("usage: field doc1,doc2... | @docid_file | - (stdin), or field --dump");
             return;
         }
 
         String field = args[0];
 
-        List<Integer> docidList = new ArrayList<>();
+        int[] docids = null;
+        boolean dump = false;
 
         int numPerPage = 20;
 
-        try {
-            String[] docListStrings = args[1].split(",");
-            for (String s : docListStrings) {
-                docidList.add(Integer.parseInt(s));
+        if (args.length > 1) {
+            if (DUMP_OPTION.equals(args[1])) {
+                dump = true;
+            } else {
+                try {
+                    docids = DocIdLookup.parseDocIds(args[1]);
+                } catch (NumberFormatException e) {
+                    out.println("invalid docid, all docs are shown");
+                    docids = null;
+                } catch (IOException e) {
+                    out.println("unable to read docids: " + e.getMessage());
+                    return;
+                }
             }
-        } catch (Exception e) {
-            out.println("invalid docid, all docs are shown");
-            docidList = null;
         }
 
         IndexReader reader = ctx.getIndexReader();
         List<LeafReaderContext> leaves = reader.leaves();
-        if (docidList != null && !docidList.isEmpty()) {
-            for (int i = leaves.size() - 1; i >= 0; --i) {
-                LeafReaderContext ctx = leaves.get(i);
-                for (Integer docid : docidList) {
-                    if (ctx.docBase <= docid) {
-                        LeafReader atomicReader = ctx.reader();
-                        showDocId(docid, ctx.docBase, field, atomicReader, out, i);
-                    }
-                }
-            }
+        if (docids != null && docids.length > 0) {
+            showDocIds(field, leaves, docids, out);
             out.flush();
             return;
+        } else if (dump || !getContext().isInteractiveMode()) {
+            dumpDocValues(field, leaves, out);
         } else {
             for (int i = 0; i < leaves.size(); ++i) {
                 LeafReaderContext ctx = leaves.get(i);
@@ -197,13 +328,14 @@ public class DocValCommand extends ClueCommand {
 
                 DocValuesType docValType = finfo.getDocValuesType();
                 BytesRef bref = new BytesRef();
+                Object docVals = readDocValues(field, docValType, atomicReader);
 
                 int maxDoc = atomicReader.maxDoc();
 
                 for (int k = 0; k < maxDoc; ++k) {
 
-                    showDocId(k + ctx.docBase, ctx.docBase, readDocValues(field, docValType, atomicReader), docValType, bref, out, i);
-                    if (getContext().isInteractiveMode() && (k + 1) % numPerPage == 0) {
+                    showDocId(k + ctx.docBase, ctx.docBase, docVals, docValType, bref, out, i);
+                    if ((k + 1) % numPerPage == 0) {
                         out.println("Ctrl-D to break");
                         int ch = System.in.read();
                         if (ch == -1) {
@@ -0,0 +1,233 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.LeafTaskRunner;
+import org.apache.lucene.index.*;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+public class DocValStatsCommand extends ClueCommand {
+
+    private static final int DEFAULT_NUM_BUCKETS = 10;
+
+    public DocValStatsCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "dvstats";
+    }
+
+    @Override
+    public String help() {
+        return "numeric docvalue stats: count, missing, min, max, sum, mean and histogram, <field> <num buckets>";
+    }
+
+    private static class NumericStats {
+        long docs = 0L;
+        long values = 0L;
+        long missing = 0L;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long sum = 0L;
+
+        void add(long val) {
+            values++;
+            sum += val;
+            if (val < min) min = val;
+            if (val > max) max = val;
+        }
+
+        void merge(NumericStats other) {
+            docs += other.docs;
+            values += other.values;
+            missing += other.missing;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    /**
+     * Visits every value of a live document in the segment, single and multi valued fields alike.
+     */
+    private interface ValueVisitor {
+        void visitDoc(boolean hasValue);
+
+        void visitValue(long val);
+    }
+
+    private static void scan(String field, DocValuesType docValType, LeafReader atomicReader,
+                             ValueVisitor visitor) throws IOException {
+        Bits liveDocs = atomicReader.getLiveDocs();
+        int maxDoc = atomicReader.maxDoc();
+        if (docValType == DocValuesType.NUMERIC) {
+            NumericDocValues dv = atomicReader.getNumericDocValues(field);
+            Bits docsWithField = atomicReader.getDocsWithField(field);
+            for (int k = 0; k < maxDoc; ++k) {
+                if (liveDocs != null && !liveDocs.get(k)) continue;
+                boolean hasValue = docsWithField.get(k);
+                visitor.visitDoc(hasValue);
+                if (hasValue) {
+                    visitor.visitValue(dv.get(k));
+                }
+            }
+        } else {
+            SortedNumericDocValues dv = atomicReader.getSortedNumericDocValues(field);
+            for (int k = 0; k < maxDoc; ++k) {
+                if (liveDocs != null && !liveDocs.get(k)) continue;
+                dv.setDocument(k);
+                int count = dv.count();
+                visitor.visitDoc(count > 0);
+                for (int i = 0; i < count; ++i) {
+                    visitor.visitValue(dv.valueAt(i));
+                }
+            }
+        }
+    }
+
+    private static DocValuesType numericType(String field, LeafReader atomicReader) {
+        FieldInfo finfo = atomicReader.getFieldInfos().fieldInfo(field);
+        if (finfo == null) {
+            return DocValuesType.NONE;
+        }
+        DocValuesType docValType = finfo.getDocValuesType();
+        if (docValType == DocValuesType.NUMERIC || docValType == DocValuesType.SORTED_NUMERIC) {
+            return docValType;
+        }
+        return DocValuesType.NONE;
+    }
+
+    private static int bucketIndex(long val, long min, double bucketWidth, int numBuckets) {
+        if (bucketWidth <= 0.0) {
+            return 0;
+        }
+        int idx = (int) (((double) val - (double) min) / bucketWidth);
+        return Math.min(Math.max(idx, 0), numBuckets - 1);
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        if (args.length < 1) {
+            out.println("usage: field <num buckets>");
+            return;
+        }
+
+        final String field = args[0];
+        int buckets = DEFAULT_NUM_BUCKETS;
+
+        try {
+            buckets = Integer.parseInt(args[1]);
+        } catch (Exception ignored) {
+        }
+
+        if (buckets <= 0) {
+            out.println("number of buckets must be positive");
+            return;
+        }
+        final int numBuckets = buckets;
+
+        IndexReader reader = ctx.getIndexReader();
+        List<LeafReaderContext> leaves = reader.leaves();
+
+        boolean found = false;
+        for (LeafReaderContext leaf : leaves) {
+            FieldInfo finfo = leaf.reader().getFieldInfos().fieldInfo(field);
+            if (finfo != null && finfo.getDocValuesType() != DocValuesType.NONE) {
+                if (numericType(field, leaf.reader()) == DocValuesType.NONE) {
+                    out.println("docvalue type " + finfo.getDocValuesType() + " is not numeric for field: " + field);
+                    return;
+                }
+                found = true;
+            }
+        }
+
+        if (!found) {
+            out.println("docvalue does not exist for field: " + field);
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        List<NumericStats> partials = LeafTaskRunner.run(ctx.getExecutorService(), leaves, leaf -> {
+            final NumericStats stats = new NumericStats();
+            LeafReader atomicReader = leaf.reader();
+            DocValuesType docValType = numericType(field, atomicReader);
+            if (docValType == DocValuesType.NONE) {
+                stats.docs = stats.missing = atomicReader.numDocs();
+                return stats;
+            }
+            scan(field, docValType, atomicReader, new ValueVisitor() {
+                @Override
+                public void visitDoc(boolean hasValue) {
+                    stats.docs++;
+                    if (!hasValue) stats.missing++;
+                }
+
+                @Override
+                public void visitValue(long val) {
+                    stats.add(val);
+                }
+            });
+            return stats;
+        });
+
+        NumericStats total = new NumericStats();
+        for (NumericStats partial : partials) {
+            total.merge(partial);
+        }
+
+        if (total.values == 0) {
+            out.println("docs: " + total.docs + ", missing: " + total.missing + ", no values found");
+            out.flush();
+            return;
+        }
+
+        // histogram bounds are only known after the first pass
+        final long min = total.min;
+        final double bucketWidth = ((double) total.max - (double) total.min) / numBuckets;
+
+        List<long[]> partialHistograms = LeafTaskRunner.run(ctx.getExecutorService(), leaves, leaf -> {
+            final long[] histogram = new long[numBuckets];
+            LeafReader atomicReader = leaf.reader();
+            DocValuesType docValType = numericType(field, atomicReader);
+            if (docValType != DocValuesType.NONE) {
+                scan(field, docValType, atomicReader, new ValueVisitor() {
+                    @Override
+                    public void visitDoc(boolean hasValue) {
+                    }
+
+                    @Override
+                    public void visitValue(long val) {
+                        histogram[bucketIndex(val, min, bucketWidth, numBuckets)]++;
+                    }
+                });
+            }
+            return histogram;
+        });
+
+        long[] histogram = new long[numBuckets];
+        for (long[] partial : partialHistograms) {
+            for (int i = 0; i < numBuckets; ++i) {
+                histogram[i] += partial[i];
+            }
+        }
+
+        long end = System.nanoTime();
+
+        double mean = (double) total.sum / (double) total.values;
+        out.println(String.format("docs: %d, values: %d, missing: %d", total.docs, total.values, total.missing));
+        out.println(String.format("min: %d, max: %d, sum: %d, mean: %.2f", total.min, total.max, total.sum, mean));
+        out.println(String.format("histogram: (buckets=%d, bucketwidth=%.2f)", numBuckets, bucketWidth));
+        for (int i = 0; i < numBuckets; ++i) {
+            long lower = (long) (min + i * bucketWidth);
+            out.println("[" + lower + "]\t" + histogram[i]);
+        }
+        out.println("segments: " + leaves.size() + ", time: " + (end - start) / 1000000L + "ms");
+        out.flush();
+    }
+}
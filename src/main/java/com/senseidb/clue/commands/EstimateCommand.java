@@ -0,0 +1,358 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.LeafTaskRunner;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SingleTermsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.Operations;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Predicts the cost of a query from term statistics only: docFreqs of the leaf terms, multi term
+ * expansions enumerated from the terms dictionary, and ScorerSupplier costs. No postings are read.
+ */
+public class EstimateCommand extends ClueCommand {
+
+    private enum Kind {
+        TERM, SYNONYM, PHRASE, MULTI_PHRASE, MULTI_TERM, BOOLEAN, DISJUNCTION_MAX, WRAPPER, ALL, NONE, OTHER
+    }
+
+    private static class Node {
+        final Query query;
+        final Kind kind;
+        final List<Node> children = new ArrayList<>();
+        // only for BOOLEAN, parallel to children
+        final List<BooleanClause.Occur> occurs = new ArrayList<>();
+        // only for OTHER
+        Weight weight;
+        // only for MULTI_TERM of an AutomatonQuery
+        CompiledAutomaton automaton;
+        // per segment
+        final long[] cost;
+        final long[] terms;
+        final long[] docFreq;
+
+        Node(Query query, Kind kind, int numSegments) {
+            this.query = query;
+            this.kind = kind;
+            this.cost = new long[numSegments];
+            this.terms = new long[numSegments];
+            this.docFreq = new long[numSegments];
+        }
+    }
+
+    public EstimateCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "estimate";
+    }
+
+    @Override
+    public String help() {
+        return "estimates the cost of a query from term statistics without running it, input: <query string>";
+    }
+
+    private static Node build(Query q, IndexSearcher searcher, int numSegments) throws IOException {
+        Node node;
+        if (q instanceof TermQuery) {
+            node = new Node(q, Kind.TERM, numSegments);
+        } else if (q instanceof SynonymQuery) {
+            node = new Node(q, Kind.SYNONYM, numSegments);
+        } else if (q instanceof PhraseQuery) {
+            node = new Node(q, Kind.PHRASE, numSegments);
+        } else if (q instanceof MultiPhraseQuery) {
+            node = new Node(q, Kind.MULTI_PHRASE, numSegments);
+        } else if (q instanceof AutomatonQuery) {
+            node = new Node(q, Kind.MULTI_TERM, numSegments);
+            // prefix and range automata are over bytes, wildcard and regexp ones over code points
+            boolean isBinary = q instanceof PrefixQuery || q instanceof TermRangeQuery;
+            node.automaton = new CompiledAutomaton(((AutomatonQuery) q).getAutomaton(), null, true,
+                    Operations.DEFAULT_MAX_DETERMINIZED_STATES, isBinary);
+        } else if (q instanceof FuzzyQuery) {
+            node = new Node(q, Kind.MULTI_TERM, numSegments);
+        } else if (q instanceof MatchAllDocsQuery) {
+            node = new Node(q, Kind.ALL, numSegments);
+        } else if (q instanceof MatchNoDocsQuery) {
+            node = new Node(q, Kind.NONE, numSegments);
+        } else if (q instanceof BooleanQuery) {
+            node = new Node(q, Kind.BOOLEAN, numSegments);
+            for (BooleanClause clause : ((BooleanQuery) q).clauses()) {
+                node.children.add(build(clause.getQuery(), searcher, numSegments));
+                node.occurs.add(clause.getOccur());
+            }
+        } else if (q instanceof DisjunctionMaxQuery) {
+            node = new Node(q, Kind.DISJUNCTION_MAX, numSegments);
+            for (Query disjunct : ((DisjunctionMaxQuery) q).getDisjuncts()) {
+                node.children.add(build(disjunct, searcher, numSegments));
+            }
+        } else if (q instanceof BoostQuery) {
+            node = new Node(q, Kind.WRAPPER, numSegments);
+            node.children.add(build(((BoostQuery) q).getQuery(), searcher, numSegments));
+        } else if (q instanceof ConstantScoreQuery) {
+            node = new Node(q, Kind.WRAPPER, numSegments);
+            node.children.add(build(((ConstantScoreQuery) q).getQuery(), searcher, numSegments));
+        } else {
+            // rely on the query's own ScorerSupplier, which is cheap for points and docvalues queries
+            node = new Node(q, Kind.OTHER, numSegments);
+            node.weight = searcher.createNormalizedWeight(q, false);
+        }
+        return node;
+    }
+
+    /**
+     * The terms a multi term query expands to, built like the query's own getTermsEnum, which is protected.
+     */
+    private static TermsEnum expand(Node node, Terms terms) throws IOException {
+        if (node.automaton != null) {
+            return node.automaton.getTermsEnum(terms);
+        }
+        FuzzyQuery fq = (FuzzyQuery) node.query;
+        Term term = fq.getTerm();
+        if (fq.getMaxEdits() == 0 || fq.getPrefixLength() >= term.text().length()) {
+            return new SingleTermsEnum(terms.iterator(), term.bytes());
+        }
+        return new FuzzyTermsEnum(terms, new AttributeSource(), term, fq.getMaxEdits(), fq.getPrefixLength(),
+                fq.getTranspositions());
+    }
+
+    private static long sumDocFreq(LeafReader reader, Term[] terms) throws IOException {
+        long sum = 0L;
+        for (Term term : terms) {
+            sum += reader.docFreq(term);
+        }
+        return sum;
+    }
+
+    /**
+     * Fills in the segment's statistics of the node and its children.
+     * @return estimated number of docs the node's scorer iterates in the segment
+     */
+    private static long estimate(Node node, LeafReaderContext leaf) throws IOException {
+        LeafReader reader = leaf.reader();
+        int ord = leaf.ord;
+        int maxDoc = reader.maxDoc();
+        long cost;
+        switch (node.kind) {
+            case TERM: {
+                Term term = ((TermQuery) node.query).getTerm();
+                node.terms[ord] = 1;
+                cost = node.docFreq[ord] = reader.docFreq(term);
+                break;
+            }
+            case SYNONYM: {
+                Term[] terms = ((SynonymQuery) node.query).getTerms().toArray(new Term[0]);
+                node.terms[ord] = terms.length;
+                node.docFreq[ord] = sumDocFreq(reader, terms);
+                cost = Math.min(node.docFreq[ord], maxDoc);
+                break;
+            }
+            case PHRASE: {
+                // all terms are required, the rarest one leads
+                Term[] terms = ((PhraseQuery) node.query).getTerms();
+                node.terms[ord] = terms.length;
+                cost = terms.length == 0 ? 0L : Long.MAX_VALUE;
+                for (Term term : terms) {
+                    int df = reader.docFreq(term);
+                    node.docFreq[ord] += df;
+                    cost = Math.min(cost, df);
+                }
+                break;
+            }
+            case MULTI_PHRASE: {
+                // a disjunction per position, the rarest position leads
+                Term[][] termArrays = ((MultiPhraseQuery) node.query).getTermArrays();
+                cost = termArrays.length == 0 ? 0L : Long.MAX_VALUE;
+                for (Term[] terms : termArrays) {
+                    long df = sumDocFreq(reader, terms);
+                    node.terms[ord] += terms.length;
+                    node.docFreq[ord] += df;
+                    cost = Math.min(cost, Math.min(df, maxDoc));
+                }
+                break;
+            }
+            case MULTI_TERM: {
+                MultiTermQuery mtq = (MultiTermQuery) node.query;
+                Terms terms = reader.terms(mtq.getField());
+                if (terms != null) {
+                    TermsEnum te = expand(node, terms);
+                    while (te.next() != null) {
+                        node.terms[ord]++;
+                        node.docFreq[ord] += te.docFreq();
+                    }
+                }
+                cost = Math.min(node.docFreq[ord], maxDoc);
+                break;
+            }
+            case BOOLEAN: {
+                long required = Long.MAX_VALUE;
+                long optional = 0L;
+                for (int i = 0; i < node.children.size(); ++i) {
+                    long childCost = estimate(node.children.get(i), leaf);
+                    switch (node.occurs.get(i)) {
+                        case MUST:
+                        case FILTER:
+                            required = Math.min(required, childCost);
+                            break;
+                        case SHOULD:
+                            optional += childCost;
+                            break;
+                        default:
+                            // prohibited clauses are only advanced to the candidates of the others
+                            break;
+                    }
+                }
+                cost = required != Long.MAX_VALUE ? required : Math.min(optional, maxDoc);
+                break;
+            }
+            case DISJUNCTION_MAX: {
+                long sum = 0L;
+                for (Node child : node.children) {
+                    sum += estimate(child, leaf);
+                }
+                cost = Math.min(sum, maxDoc);
+                break;
+            }
+            case WRAPPER:
+                cost = estimate(node.children.get(0), leaf);
+                break;
+            case ALL:
+                cost = maxDoc;
+                break;
+            case NONE:
+                cost = 0L;
+                break;
+            default: {
+                ScorerSupplier supplier = node.weight.scorerSupplier(leaf);
+                cost = supplier == null ? 0L : supplier.cost();
+                break;
+            }
+        }
+        node.cost[ord] = cost;
+        return cost;
+    }
+
+    private static boolean hasMultiTerm(Node node) {
+        if (node.kind == Kind.MULTI_TERM) {
+            return true;
+        }
+        for (Node child : node.children) {
+            if (hasMultiTerm(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0L;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static void print(Node node, String indent, String occur, int maxDoc, PrintStream out) {
+        StringBuilder buf = new StringBuilder();
+        buf.append(indent).append(occur).append(node.query).append(" (").append(node.kind.name().toLowerCase()).append(")");
+        buf.append(", cost: ").append(sum(node.cost));
+        long terms = sum(node.terms);
+        if (node.kind != Kind.TERM && terms > 0) {
+            buf.append(", terms: ").append(terms).append(", docFreq sum: ").append(sum(node.docFreq));
+        }
+        if (node.kind == Kind.MULTI_TERM) {
+            long maxTerms = 0L;
+            for (long t : node.terms) {
+                maxTerms = Math.max(maxTerms, t);
+            }
+            if (maxTerms > BooleanQuery.getMaxClauseCount()) {
+                buf.append(" [expands beyond ").append(BooleanQuery.getMaxClauseCount()).append(" clauses]");
+            }
+        }
+        if (maxDoc > 0 && sum(node.cost) * 2 > maxDoc) {
+            buf.append(" [matches most docs]");
+        }
+        out.println(buf);
+        for (int i = 0; i < node.children.size(); ++i) {
+            Node child = node.children.get(i);
+            String childOccur = node.occurs.isEmpty() ? "" : node.occurs.get(i).toString();
+            print(child, indent + "  ", childOccur, maxDoc, out);
+        }
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        if (args.length == 0) {
+            out.println("usage: query");
+            return;
+        }
+        StringBuilder buf = new StringBuilder();
+        for (String s : args) {
+            buf.append(s).append(" ");
+        }
+        final String qstring = buf.toString();
+        Query q;
+        try {
+            q = ctx.getQueryResultCache().getQuery(qstring, () -> ctx.getQueryBuilder().build(qstring));
+        } catch (Exception e) {
+            out.println("cannot parse query: " + e.getMessage());
+            return;
+        }
+
+        IndexReader r = ctx.getIndexReader();
+        List<LeafReaderContext> leaves = r.leaves();
+        IndexSearcher searcher = new IndexSearcher(r);
+        searcher.setQueryCache(null);
+
+        long start = System.nanoTime();
+        Query rewritten;
+        try {
+            rewritten = searcher.rewrite(q);
+        } catch (BooleanQuery.TooManyClauses e) {
+            rewritten = null;
+        }
+        final Node root = build(q, searcher, leaves.size());
+        // constant score multi term queries enumerate their postings when building a scorer, skip them
+        final Weight weight = rewritten == null || hasMultiTerm(root) ? null
+                : searcher.createNormalizedWeight(rewritten, false);
+        long[] weightCosts = new long[leaves.size()];
+        LeafTaskRunner.run(ctx.getExecutorService(), leaves, leaf -> {
+            estimate(root, leaf);
+            if (weight != null) {
+                ScorerSupplier supplier = weight.scorerSupplier(leaf);
+                weightCosts[leaf.ord] = supplier == null ? 0L : supplier.cost();
+            }
+            return null;
+        });
+        long end = System.nanoTime();
+
+        out.println("parsed query: " + q);
+        out.println("rewritten query: " + (rewritten == null
+                ? "too many clauses, more than " + BooleanQuery.getMaxClauseCount() : rewritten));
+        for (LeafReaderContext leaf : leaves) {
+            out.println("segment " + leaf.ord + ": maxDoc: " + leaf.reader().maxDoc()
+                    + ", estimated cost: " + root.cost[leaf.ord]
+                    + ", weight cost: " + (weight == null ? "n/a" : String.valueOf(weightCosts[leaf.ord])));
+        }
+        out.println("all segments: maxDoc: " + r.maxDoc() + ", estimated cost: " + sum(root.cost)
+                + ", weight cost: " + (weight == null ? "n/a" : String.valueOf(sum(weightCosts))));
+        print(root, "", "", r.maxDoc(), out);
+        out.println("time: " + String.format("%.3fms", (end - start) / 1000000.0)
+                + ", costs bound the docs a scorer iterates: conjunctions take their rarest clause, disjunctions the sum");
+        out.flush();
+    }
+}
@@ -1,17 +1,24 @@
 package com.senseidb.clue.commands;
 
 import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.DocIdLookup;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Weight;
 
+import java.io.IOException;
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 public class ExplainCommand extends ClueCommand {
 
+    private static final String TOP_OPTION = "--top";
 
     public ExplainCommand(ClueContext ctx) {
         super(ctx);
@@ -24,32 +31,71 @@ public class ExplainCommand extends ClueCommand {
 
     @Override
     public String help() {
-        return "shows score explanation of a doc";
+        return "shows score explanation of docs, input: <query string> <docids> | <query string> " + TOP_OPTION + " n, "
+                + "docids is a comma separated list, @file or - for stdin";
+    }
+
+    private interface ExplanationVisitor {
+        void visit(int docid, Explanation explanation);
+    }
+
+    /**
+     * Explains the docs with a single Weight, segment by segment in docid order.
+     */
+    private static void explain(Weight weight, IndexReader reader, int[] docids, final ExplanationVisitor visitor,
+                                final PrintStream out) throws Exception {
+        DocIdLookup.lookup(reader.leaves(), docids, new DocIdLookup.SegmentVisitor() {
+            LeafReaderContext leaf;
+
+            @Override
+            public void startSegment(int segmentIdx, LeafReaderContext leaf) {
+                this.leaf = leaf;
+            }
+
+            @Override
+            public void visit(int docid, int subid) throws IOException {
+                visitor.visit(docid, weight.explain(leaf, subid));
+            }
+
+            @Override
+            public void outOfRange(int docid) {
+                out.println("docid out of range: " + docid);
+            }
+        });
     }
 
     @Override
     public void execute(String[] args, PrintStream out) throws Exception {
         if (args.length < 2) {
-            out.println("usage: query docs");
+            out.println("usage: query docs | query " + TOP_OPTION + " n");
             return;
         }
 
-
-        String docString = args[args.length - 1];
-        String[] docList = docString.split(",");
-
-        List<Integer> docidList = new ArrayList<>();
+        int numQueryArgs;
+        int top = 0;
+        int[] docids = null;
         try {
-            for (String s : docList) {
-                docidList.add(Integer.parseInt(s));
+            if (args.length > 2 && TOP_OPTION.equals(args[args.length - 2])) {
+                numQueryArgs = args.length - 2;
+                top = Integer.parseInt(args[args.length - 1]);
+                if (top <= 0) {
+                    out.println("top must be positive");
+                    return;
+                }
+            } else {
+                numQueryArgs = args.length - 1;
+                docids = DocIdLookup.parseDocIds(args[args.length - 1]);
             }
-        } catch (Exception e) {
+        } catch (NumberFormatException e) {
             out.println("error in parsing docids: " + e.getMessage());
             return;
+        } catch (IOException e) {
+            out.println("unable to read docids: " + e.getMessage());
+            return;
         }
         StringBuilder buf = new StringBuilder();
 
-        for (int i = 0; i < args.length - 1; ++i) {
+        for (int i = 0; i < numQueryArgs; ++i) {
             buf.append(args[i]).append(" ");
         }
 
@@ -57,18 +103,37 @@ public class ExplainCommand extends ClueCommand {
         IndexSearcher searcher = new IndexSearcher(r);
         Query q;
 
-        String qstring = buf.toString();
+        final String qstring = buf.toString();
 
         try {
-            q = ctx.getQueryBuilder().build(qstring);
+            q = ctx.getQueryResultCache().getQuery(qstring, () -> ctx.getQueryBuilder().build(qstring));
         } catch (Exception e) {
             out.println("cannot parse query: " + e.getMessage());
             return;
         }
 
-        for (Integer docid : docidList) {
-            Explanation expl = searcher.explain(q, docid);
-            out.println(expl);
+        // one Weight for all docs instead of one per searcher.explain call
+        Weight weight = searcher.createNormalizedWeight(q, true);
+
+        if (docids != null) {
+            explain(weight, r, docids, (docid, explanation) -> {
+                out.println("doc: " + docid);
+                out.println(explanation);
+            }, out);
+        } else {
+            TopDocs td = searcher.search(q, top);
+            out.println("numhits: " + td.totalHits);
+            int[] topDocids = new int[td.scoreDocs.length];
+            for (int i = 0; i < topDocids.length; ++i) {
+                topDocids[i] = td.scoreDocs[i].doc;
+            }
+            final Map<Integer, Explanation> explanations = new HashMap<>();
+            explain(weight, r, topDocids, explanations::put, out);
+            // shown in rank order
+            for (ScoreDoc scoreDoc : td.scoreDocs) {
+                out.println("doc: " + scoreDoc.doc + ", score: " + scoreDoc.score);
+                out.println(explanations.get(scoreDoc.doc));
+            }
         }
 
         out.flush();
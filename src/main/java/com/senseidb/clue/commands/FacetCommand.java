@@ -0,0 +1,214 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.LeafTaskRunner;
+import com.senseidb.clue.util.SortedSetFacetState;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.TopOrdAndIntQueue;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.LongValues;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FacetCommand extends ClueCommand {
+
+    private static final String TOP_OPTION = "--top";
+    private static final int DEFAULT_TOP = 10;
+
+    public FacetCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "facet";
+    }
+
+    @Override
+    public String help() {
+        return "counts the values of SORTED or SORTED_SET docvalues fields over the hits of a query, "
+                + "<query string> <field...> [" + TOP_OPTION + " n]";
+    }
+
+    private static class SegmentCounts {
+        int hits;
+        // per field, indexed by segment ord
+        final int[][] counts;
+
+        SegmentCounts(int numFields) {
+            counts = new int[numFields][];
+        }
+    }
+
+    private static SegmentCounts countSegment(Weight weight, LeafReaderContext leaf, String[] fields) throws IOException {
+        final SegmentCounts segmentCounts = new SegmentCounts(fields.length);
+        final SortedSetDocValues[] values = new SortedSetDocValues[fields.length];
+        for (int i = 0; i < fields.length; ++i) {
+            values[i] = DocValues.getSortedSet(leaf.reader(), fields[i]);
+            segmentCounts.counts[i] = new int[(int) values[i].getValueCount()];
+        }
+        BulkScorer scorer = weight.bulkScorer(leaf);
+        if (scorer == null) {
+            return segmentCounts;
+        }
+        scorer.score(new LeafCollector() {
+            @Override
+            public void setScorer(Scorer scorer) {
+            }
+
+            @Override
+            public void collect(int doc) {
+                segmentCounts.hits++;
+                for (int i = 0; i < values.length; ++i) {
+                    SortedSetDocValues dv = values[i];
+                    int[] counts = segmentCounts.counts[i];
+                    dv.setDocument(doc);
+                    for (long ord = dv.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = dv.nextOrd()) {
+                        counts[(int) ord]++;
+                    }
+                }
+            }
+        }, leaf.reader().getLiveDocs());
+        return segmentCounts;
+    }
+
+    private static FacetResult topChildren(SortedSetFacetState state, int[] counts, int topN) throws IOException {
+        TopOrdAndIntQueue queue = new TopOrdAndIntQueue(Math.min(topN, Math.max(1, counts.length)));
+        TopOrdAndIntQueue.OrdAndValue reuse = null;
+        int sum = 0;
+        int childCount = 0;
+        for (int ord = 0; ord < counts.length; ++ord) {
+            if (counts[ord] == 0) continue;
+            sum += counts[ord];
+            childCount++;
+            if (reuse == null) {
+                reuse = new TopOrdAndIntQueue.OrdAndValue();
+            }
+            reuse.ord = ord;
+            reuse.value = counts[ord];
+            reuse = queue.insertWithOverflow(reuse);
+        }
+        LabelAndValue[] labelValues = new LabelAndValue[queue.size()];
+        for (int i = labelValues.length - 1; i >= 0; --i) {
+            TopOrdAndIntQueue.OrdAndValue top = queue.pop();
+            labelValues[i] = new LabelAndValue(state.lookupGlobalOrd(top.ord).utf8ToString(), top.value);
+        }
+        return new FacetResult(state.getField(), new String[0], sum, labelValues, childCount);
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        IndexReader r = ctx.getIndexReader();
+        int topN = DEFAULT_TOP;
+        List<String> rest = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                if (TOP_OPTION.equals(args[i]) && i + 1 < args.length) {
+                    topN = Integer.parseInt(args[++i]);
+                } else {
+                    rest.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            out.println("invalid top: " + e.getMessage());
+            return;
+        }
+        if (topN <= 0) {
+            out.println("top must be positive");
+            return;
+        }
+
+        // the trailing arguments naming SORTED or SORTED_SET docvalues fields are the facet fields
+        int numQueryArgs = rest.size();
+        while (numQueryArgs > 0) {
+            DocValuesType type = SearchCommand.docValuesType(r, rest.get(numQueryArgs - 1));
+            if (type != DocValuesType.SORTED && type != DocValuesType.SORTED_SET) {
+                break;
+            }
+            numQueryArgs--;
+        }
+        final String[] fields = rest.subList(numQueryArgs, rest.size()).toArray(new String[0]);
+        if (fields.length == 0) {
+            out.println("usage: query field...");
+            out.println("fields must have SORTED or SORTED_SET docvalues");
+            return;
+        }
+
+        final Query q;
+        if (numQueryArgs == 0) {
+            q = new MatchAllDocsQuery();
+        } else {
+            StringBuilder buf = new StringBuilder();
+            for (String s : rest.subList(0, numQueryArgs)) {
+                buf.append(s).append(" ");
+            }
+            final String qstring = buf.toString();
+            try {
+                q = ctx.getQueryResultCache().getQuery(qstring, () -> ctx.getQueryBuilder().build(qstring));
+            } catch (Exception e) {
+                out.println("cannot parse query: " + e.getMessage());
+                return;
+            }
+        }
+        out.println("parsed query: " + q);
+
+        long start = System.nanoTime();
+        SortedSetFacetState[] states = new SortedSetFacetState[fields.length];
+        for (int i = 0; i < fields.length; ++i) {
+            states[i] = ctx.getFacetState(fields[i]);
+        }
+        long stateNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        IndexSearcher searcher = new IndexSearcher(r);
+        final Weight weight = searcher.createNormalizedWeight(q, false);
+        List<LeafReaderContext> leaves = r.leaves();
+        // segments are counted on their own ords in parallel, then mapped to global ords
+        List<SegmentCounts> segmentCounts = LeafTaskRunner.run(ctx.getExecutorService(), leaves,
+                leaf -> countSegment(weight, leaf, fields));
+        int hits = 0;
+        int[][] counts = new int[fields.length][];
+        for (int i = 0; i < fields.length; ++i) {
+            counts[i] = new int[states[i].getSize()];
+        }
+        for (LeafReaderContext leaf : leaves) {
+            SegmentCounts segment = segmentCounts.get(leaf.ord);
+            hits += segment.hits;
+            for (int i = 0; i < fields.length; ++i) {
+                LongValues globalOrds = states[i].getGlobalOrds(leaf.ord);
+                int[] segmentFieldCounts = segment.counts[i];
+                for (int ord = 0; ord < segmentFieldCounts.length; ++ord) {
+                    if (segmentFieldCounts[ord] != 0) {
+                        counts[i][(int) globalOrds.get(ord)] += segmentFieldCounts[ord];
+                    }
+                }
+            }
+        }
+        long countNanos = System.nanoTime() - start;
+
+        out.println("numhits: " + hits);
+        for (int i = 0; i < fields.length; ++i) {
+            FacetResult result = topChildren(states[i], counts[i], topN);
+            out.println(result.dim + ": values: " + result.childCount + ", sum of counts: " + result.value);
+            for (LabelAndValue labelValue : result.labelValues) {
+                out.println("\t" + labelValue.label + "\t" + labelValue.value);
+            }
+        }
+        long stateBytes = 0L;
+        for (SortedSetFacetState state : states) {
+            stateBytes += state.ramBytesUsed();
+        }
+        out.println(String.format("time: state: %.3fms (%d bytes cached), counting: %.3fms",
+                stateNanos / 1000000.0, stateBytes, countNanos / 1000000.0));
+        out.flush();
+    }
+}
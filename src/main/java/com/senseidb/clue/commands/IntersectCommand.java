@@ -0,0 +1,327 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.IntArrayDocIdSetIterator;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PriorityQueue;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public class IntersectCommand extends ClueCommand {
+
+    private static final String USAGE = "usage: field:term field:term ... [-field:term ...]";
+    private static final int TIMED_ROUNDS = 5;
+
+    private static final String[] MODES = new String[]{"and", "or", "andnot"};
+    private static final String[] SOURCES = new String[]{"codec", "memory"};
+
+    public IntersectCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "intersect";
+    }
+
+    @Override
+    public String help() {
+        return "times AND, OR and AND-NOT of posting lists per segment, from the codec and from memory, "
+                + "<field:term> <field:term> ... terms prefixed with - are excluded in AND-NOT";
+    }
+
+    private static class CountingIterator extends DocIdSetIterator {
+        private final DocIdSetIterator in;
+        long nextDocCalls;
+        long advanceCalls;
+
+        CountingIterator(DocIdSetIterator in) {
+            this.in = in;
+        }
+
+        @Override
+        public int docID() {
+            return in.docID();
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            nextDocCalls++;
+            return in.nextDoc();
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+            advanceCalls++;
+            return in.advance(target);
+        }
+
+        @Override
+        public long cost() {
+            return in.cost();
+        }
+    }
+
+    private static class IteratorQueue extends PriorityQueue<DocIdSetIterator> {
+        IteratorQueue(int size) {
+            super(size);
+        }
+
+        @Override
+        protected boolean lessThan(DocIdSetIterator a, DocIdSetIterator b) {
+            return a.docID() < b.docID();
+        }
+    }
+
+    /**
+     * Leap frog over the iterators, the cheapest one leads.
+     */
+    private static long and(DocIdSetIterator[] iters, DocIdSetIterator[] excluded) throws IOException {
+        Arrays.sort(iters, Comparator.comparingLong(DocIdSetIterator::cost));
+        DocIdSetIterator lead = iters[0];
+        long matched = 0L;
+        int doc = lead.nextDoc();
+        advanceHead:
+        while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+            for (int i = 1; i < iters.length; ++i) {
+                DocIdSetIterator other = iters[i];
+                if (other.docID() < doc) {
+                    int next = other.advance(doc);
+                    if (next > doc) {
+                        doc = lead.advance(next);
+                        continue advanceHead;
+                    }
+                }
+            }
+            boolean match = true;
+            for (DocIdSetIterator exclude : excluded) {
+                if (exclude.docID() < doc) {
+                    exclude.advance(doc);
+                }
+                if (exclude.docID() == doc) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                matched++;
+            }
+            doc = lead.nextDoc();
+        }
+        return matched;
+    }
+
+    private static long or(DocIdSetIterator[] iters) throws IOException {
+        IteratorQueue queue = new IteratorQueue(iters.length);
+        for (DocIdSetIterator iter : iters) {
+            iter.nextDoc();
+            queue.add(iter);
+        }
+        long matched = 0L;
+        int doc;
+        while ((doc = queue.top().docID()) != DocIdSetIterator.NO_MORE_DOCS) {
+            matched++;
+            do {
+                queue.top().nextDoc();
+                queue.updateTop();
+            } while (queue.top().docID() == doc);
+        }
+        return matched;
+    }
+
+    private static class Result {
+        long matched;
+        long nextDocCalls;
+        long advanceCalls;
+        long nanos;
+
+        void add(Result other) {
+            matched += other.matched;
+            nextDocCalls += other.nextDocCalls;
+            advanceCalls += other.advanceCalls;
+            nanos += other.nanos;
+        }
+    }
+
+    private static class SegmentLists {
+        final TermsEnum[] termsEnums;
+        // precomputed docids per term, null if the term is not in the segment
+        final int[][] docids;
+
+        SegmentLists(int numTerms) {
+            termsEnums = new TermsEnum[numTerms];
+            docids = new int[numTerms][];
+        }
+
+        DocIdSetIterator iterator(int source, int term) throws IOException {
+            if (source == 0) {
+                return termsEnums[term].postings(null, PostingsEnum.NONE);
+            }
+            return new IntArrayDocIdSetIterator(docids[term]);
+        }
+    }
+
+    private static SegmentLists load(LeafReader reader, String[] fields, BytesRef[] terms) throws IOException {
+        SegmentLists lists = new SegmentLists(terms.length);
+        for (int i = 0; i < terms.length; ++i) {
+            Terms fieldTerms = reader.terms(fields[i]);
+            if (fieldTerms == null) continue;
+            TermsEnum te = fieldTerms.iterator();
+            if (!te.seekExact(terms[i])) continue;
+            lists.termsEnums[i] = te;
+            PostingsEnum postings = te.postings(null, PostingsEnum.NONE);
+            int[] docids = new int[te.docFreq()];
+            int count = 0;
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                docids = ArrayUtil.grow(docids, count + 1);
+                docids[count++] = doc;
+            }
+            lists.docids[i] = docids.length == count ? docids : Arrays.copyOf(docids, count);
+        }
+        return lists;
+    }
+
+    private static long run(int mode, DocIdSetIterator[] required, DocIdSetIterator[] excluded) throws IOException {
+        if (mode == 1) {
+            return or(required);
+        }
+        return and(required, mode == 2 ? excluded : new DocIdSetIterator[0]);
+    }
+
+    /**
+     * One counted run for the call counts, then the fastest of a few uninstrumented runs.
+     */
+    private static Result evaluate(SegmentLists lists, int mode, int source, boolean[] exclude) throws IOException {
+        Result result = new Result();
+        List<Integer> requiredIdx = new ArrayList<>();
+        List<Integer> excludedIdx = new ArrayList<>();
+        for (int i = 0; i < exclude.length; ++i) {
+            boolean present = lists.termsEnums[i] != null;
+            if (exclude[i]) {
+                if (present) excludedIdx.add(i);
+            } else if (present) {
+                requiredIdx.add(i);
+            } else if (mode != 1) {
+                // a required term is missing, nothing in this segment can match
+                return result;
+            }
+        }
+        if (requiredIdx.isEmpty()) {
+            return result;
+        }
+
+        CountingIterator[] counted = new CountingIterator[requiredIdx.size() + excludedIdx.size()];
+        DocIdSetIterator[] required = new DocIdSetIterator[requiredIdx.size()];
+        DocIdSetIterator[] excluded = new DocIdSetIterator[excludedIdx.size()];
+        for (int i = 0; i < required.length; ++i) {
+            required[i] = counted[i] = new CountingIterator(lists.iterator(source, requiredIdx.get(i)));
+        }
+        for (int i = 0; i < excluded.length; ++i) {
+            excluded[i] = counted[required.length + i] = new CountingIterator(lists.iterator(source, excludedIdx.get(i)));
+        }
+        result.matched = run(mode, required, excluded);
+        for (CountingIterator iter : counted) {
+            result.nextDocCalls += iter.nextDocCalls;
+            result.advanceCalls += iter.advanceCalls;
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < TIMED_ROUNDS; ++round) {
+            for (int i = 0; i < required.length; ++i) {
+                required[i] = lists.iterator(source, requiredIdx.get(i));
+            }
+            for (int i = 0; i < excluded.length; ++i) {
+                excluded[i] = lists.iterator(source, excludedIdx.get(i));
+            }
+            long start = System.nanoTime();
+            long matched = run(mode, required, excluded);
+            best = Math.min(best, System.nanoTime() - start);
+            if (matched != result.matched) {
+                throw new IllegalStateException("inconsistent number of matches");
+            }
+        }
+        result.nanos = best;
+        return result;
+    }
+
+    private static void print(PrintStream out, String mode, String source, String segment, Result result) {
+        String nsPerMatch = result.matched == 0 ? "n/a" : String.format("%.2f", (double) result.nanos / result.matched);
+        out.println(String.format("%-7s %-7s %-8s %10d %10d %10d %12d %10s", mode, source, segment,
+                result.matched, result.nextDocCalls, result.advanceCalls, result.nanos / 1000L, nsPerMatch));
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        if (args.length < 1) {
+            out.println(USAGE);
+            return;
+        }
+
+        String[] fields = new String[args.length];
+        BytesRef[] terms = new BytesRef[args.length];
+        boolean[] exclude = new boolean[args.length];
+        boolean hasRequired = false;
+        boolean hasExcluded = false;
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            if (arg.startsWith("-")) {
+                exclude[i] = true;
+                hasExcluded = true;
+                arg = arg.substring(1);
+            } else {
+                hasRequired = true;
+            }
+            String[] parts = arg.split(":", 2);
+            if (parts.length != 2) {
+                out.println(USAGE);
+                return;
+            }
+            fields[i] = parts[0];
+            terms[i] = new BytesRef(parts[1]);
+        }
+        if (!hasRequired) {
+            out.println("at least one term must not be excluded");
+            return;
+        }
+
+        IndexReader reader = ctx.getIndexReader();
+        List<LeafReaderContext> leaves = reader.leaves();
+
+        // segments run one after another so the timings do not compete for cpu
+        Result[][] totals = new Result[MODES.length][SOURCES.length];
+        out.println(String.format("%-7s %-7s %-8s %10s %10s %10s %12s %10s", "mode", "source", "segment",
+                "matched", "nextDoc", "advance", "time(us)", "ns/match"));
+        for (LeafReaderContext leaf : leaves) {
+            SegmentLists lists = load(leaf.reader(), fields, terms);
+            for (int mode = 0; mode < MODES.length; ++mode) {
+                if (mode == 2 && !hasExcluded) continue;
+                for (int source = 0; source < SOURCES.length; ++source) {
+                    Result result = evaluate(lists, mode, source, exclude);
+                    print(out, MODES[mode], SOURCES[source], String.valueOf(leaf.ord), result);
+                    if (totals[mode][source] == null) {
+                        totals[mode][source] = new Result();
+                    }
+                    totals[mode][source].add(result);
+                }
+            }
+        }
+
+        for (int mode = 0; mode < MODES.length; ++mode) {
+            for (int source = 0; source < SOURCES.length; ++source) {
+                if (totals[mode][source] != null) {
+                    print(out, MODES[mode], SOURCES[source], "all", totals[mode][source]);
+                }
+            }
+        }
+        out.println("and and or are over the terms not prefixed with -, deleted docs are not filtered");
+        out.flush();
+    }
+}
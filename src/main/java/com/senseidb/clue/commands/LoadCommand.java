@@ -0,0 +1,236 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.LatencyHistogram;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class LoadCommand extends ClueCommand {
+
+    private static final String QPS_OPTION = "--qps";
+    private static final String DURATION_OPTION = "--duration";
+    private static final String WARMUP_OPTION = "--warmup";
+    private static final String THREADS_OPTION = "--threads";
+    private static final String TOPN_OPTION = "--topn";
+    private static final String USAGE = "usage: <query file> " + QPS_OPTION + " rate [" + DURATION_OPTION
+            + " seconds] [" + WARMUP_OPTION + " seconds] [" + THREADS_OPTION + " t] [" + TOPN_OPTION + " n]";
+
+    private static final int DEFAULT_DURATION = 10;
+    private static final int DEFAULT_TOPN = 10;
+    // time allowed for the queued searches to finish once sending stopped
+    private static final long DRAIN_TIMEOUT_SECONDS = 60L;
+    private static final double[] PERCENTILES = new double[]{
+            50.0, 90.0, 99.0, 99.9, 99.99
+    };
+    private static final String[] PERCENTILE_NAMES = new String[]{
+            "p50", "p90", "p99", "p999", "p9999"
+    };
+
+    public LoadCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "load";
+    }
+
+    @Override
+    public String help() {
+        return "sends the queries of a file at a fixed rate and reports latency from the intended send time, "
+                + "<query file> " + QPS_OPTION + " rate [" + DURATION_OPTION + " seconds] [" + WARMUP_OPTION
+                + " seconds] [" + THREADS_OPTION + " t] [" + TOPN_OPTION + " n]";
+    }
+
+    private static class Phase {
+        // from the intended send time, includes the time spent queued
+        final LatencyHistogram latency = new LatencyHistogram();
+        // from the time the search actually started
+        final LatencyHistogram service = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong lastEnd = new AtomicLong();
+        long sent;
+        // sends the scheduler issued after their intended time
+        long lateSends;
+    }
+
+    /**
+     * Open loop: send i is due at start + i * interval whatever happened to the previous ones,
+     * so a slow search queues the following ones instead of delaying them unmeasured.
+     */
+    private static Phase run(ExecutorService pool, final IndexSearcher searcher, final Query[] queries,
+                             double qps, long durationNanos, final int topN) {
+        final Phase phase = new Phase();
+        double interval = 1000000000.0 / qps;
+        long start = System.nanoTime();
+        for (long i = 0; ; ++i) {
+            final long intended = start + (long) (i * interval);
+            if (intended - start >= durationNanos) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            if (now - intended > interval) {
+                phase.lateSends++;
+            }
+            final Query query = queries[(int) (i % queries.length)];
+            pool.execute(() -> {
+                long searchStart = System.nanoTime();
+                try {
+                    searcher.search(query, topN);
+                } catch (Exception e) {
+                    phase.errors.incrementAndGet();
+                }
+                long end = System.nanoTime();
+                phase.latency.record(end - intended);
+                phase.service.record(end - searchStart);
+                phase.lastEnd.accumulateAndGet(end, Math::max);
+            });
+            phase.sent++;
+        }
+        return phase;
+    }
+
+    private static String histogramString(LatencyHistogram histogram) {
+        StringBuilder buf = new StringBuilder();
+        buf.append(String.format("mean: %.3f", histogram.getMean() / 1000000.0));
+        for (int i = 0; i < PERCENTILES.length; ++i) {
+            buf.append(String.format(", %s: %.3f", PERCENTILE_NAMES[i],
+                    histogram.getValueAtPercentile(PERCENTILES[i]) / 1000000.0));
+        }
+        buf.append(String.format(", max: %.3f", histogram.getMax() / 1000000.0));
+        return buf.toString();
+    }
+
+    /**
+     * Waits for every search sent in the phase to complete, so the next phase starts on an idle pool.
+     */
+    private static boolean awaitPhase(Phase phase, long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (phase.latency.getCount() < phase.sent) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    private static boolean awaitDrain(ExecutorService pool, List<Runnable> pending) throws InterruptedException {
+        pool.shutdown();
+        if (pool.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            return true;
+        }
+        pending.addAll(pool.shutdownNow());
+        return false;
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        String file = null;
+        double qps = 0.0;
+        int duration = DEFAULT_DURATION;
+        int warmup = 0;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        int topN = DEFAULT_TOPN;
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                String arg = args[i];
+                if (QPS_OPTION.equals(arg) && i + 1 < args.length) {
+                    qps = Double.parseDouble(args[++i]);
+                } else if (DURATION_OPTION.equals(arg) && i + 1 < args.length) {
+                    duration = Integer.parseInt(args[++i]);
+                } else if (WARMUP_OPTION.equals(arg) && i + 1 < args.length) {
+                    warmup = Integer.parseInt(args[++i]);
+                } else if (THREADS_OPTION.equals(arg) && i + 1 < args.length) {
+                    numThreads = Integer.parseInt(args[++i]);
+                } else if (TOPN_OPTION.equals(arg) && i + 1 < args.length) {
+                    topN = Integer.parseInt(args[++i]);
+                } else if (file == null) {
+                    file = arg;
+                } else {
+                    out.println(USAGE);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            out.println("invalid number: " + e.getMessage());
+            return;
+        }
+        if (file == null || qps <= 0.0 || duration <= 0 || warmup < 0 || numThreads <= 0 || topN <= 0) {
+            out.println(USAGE);
+            return;
+        }
+
+        List<String> queryStrings;
+        try {
+            queryStrings = BenchCommand.readQueries(file);
+        } catch (IOException e) {
+            out.println("unable to read queries from: " + file);
+            return;
+        }
+        List<Query> parsed = new ArrayList<>();
+        for (String queryString : queryStrings) {
+            try {
+                parsed.add(ctx.getQueryBuilder().build(queryString));
+            } catch (Exception e) {
+                out.println("skipping, cannot parse query: " + queryString + ", " + e.getMessage());
+            }
+        }
+        if (parsed.isEmpty()) {
+            out.println("no queries to run");
+            return;
+        }
+        Query[] queries = parsed.toArray(new Query[parsed.size()]);
+
+        IndexSearcher searcher = new IndexSearcher(ctx.getIndexReader());
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, "clue-load");
+            t.setDaemon(true);
+            return t;
+        });
+
+        Phase phase;
+        long start;
+        List<Runnable> pending = new ArrayList<>();
+        boolean drained;
+        try {
+            if (warmup > 0) {
+                Phase warmupPhase = run(pool, searcher, queries, qps, TimeUnit.SECONDS.toNanos(warmup), topN);
+                if (!awaitPhase(warmupPhase, TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS))) {
+                    out.println("warmup searches still running after " + DRAIN_TIMEOUT_SECONDS + "s: "
+                            + (warmupPhase.sent - warmupPhase.latency.getCount()));
+                }
+            }
+            start = System.nanoTime();
+            phase = run(pool, searcher, queries, qps, TimeUnit.SECONDS.toNanos(duration), topN);
+        } finally {
+            drained = awaitDrain(pool, pending);
+        }
+
+        long completed = phase.latency.getCount();
+        double seconds = (phase.lastEnd.get() - start) / 1000000000.0;
+        out.println(String.format("target qps: %.1f, duration: %ds, warmup: %ds, threads: %d, queries: %d",
+                qps, duration, warmup, numThreads, queries.length));
+        out.println(String.format("sent: %d, completed: %d, errors: %d, late sends: %d, achieved qps: %.1f",
+                phase.sent, completed, phase.errors.get(), phase.lateSends, seconds > 0 ? completed / seconds : 0.0));
+        out.println("latency in ms, from the intended send time, dropped: " + pending.size()
+                + (drained ? "" : " (still queued after " + DRAIN_TIMEOUT_SECONDS + "s)"));
+        out.println("\t" + histogramString(phase.latency));
+        out.println("service time in ms, from the start of the search");
+        out.println("\t" + histogramString(phase.service));
+        out.flush();
+    }
+}
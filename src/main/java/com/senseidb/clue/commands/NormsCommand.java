@@ -1,14 +1,24 @@
 package com.senseidb.clue.commands;
 
 import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.DocIdLookup;
+import com.senseidb.clue.util.LeafTaskRunner;
 import org.apache.lucene.index.*;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.SmallFloat;
 
+import java.io.IOException;
 import java.io.PrintStream;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class NormsCommand extends ClueCommand {
 
+    private static final String STATS_OPTION = "--stats";
+    private static final double[] PERCENTILES = new double[]{
+            50.0, 75.0, 90.0, 95.0, 99.0
+    };
+
     public NormsCommand(ClueContext ctx) {
         super(ctx);
     }
@@ -20,7 +30,7 @@ public class NormsCommand extends ClueCommand {
 
     @Override
     public String help() {
-        return "displays norm values for a field for a list of documents";
+        return "displays norm values for a field for a list of documents, <field> <docids|@file|->, <field> --stats for a norm histogram";
     }
 
     private void showDocId(int docid, int docBase,
@@ -40,49 +50,161 @@ public class NormsCommand extends ClueCommand {
         }
     }
 
+    private static class NormHistogram {
+        final long[] counts = new long[256];
+        long docs = 0L;
+        long outOfRange = 0L;
+
+        void merge(NormHistogram other) {
+            docs += other.docs;
+            outOfRange += other.outOfRange;
+            for (int i = 0; i < counts.length; ++i) {
+                counts[i] += other.counts[i];
+            }
+        }
+    }
+
+    /**
+     * Field length the default similarities encode into a norm byte, which is 1/sqrt(length)
+     * assuming no index time boost.
+     */
+    private static double estimatedLength(int encodedNorm) {
+        float f = SmallFloat.byte315ToFloat((byte) encodedNorm);
+        return 1.0 / ((double) f * (double) f);
+    }
+
+    private void showStats(final String field, List<LeafReaderContext> leaves, PrintStream out) throws Exception {
+        long start = System.nanoTime();
+        List<NormHistogram> partials = LeafTaskRunner.run(ctx.getExecutorService(), leaves, leaf -> {
+            NormHistogram histogram = new NormHistogram();
+            LeafReader atomicReader = leaf.reader();
+            FieldInfo finfo = atomicReader.getFieldInfos().fieldInfo(field);
+            if (finfo == null || !finfo.hasNorms()) {
+                return histogram;
+            }
+            NumericDocValues norms = atomicReader.getNormValues(field);
+            Bits liveDocs = atomicReader.getLiveDocs();
+            int maxDoc = atomicReader.maxDoc();
+            for (int k = 0; k < maxDoc; ++k) {
+                if (liveDocs != null && !liveDocs.get(k)) continue;
+                long norm = norms.get(k);
+                histogram.docs++;
+                if (norm < Byte.MIN_VALUE || norm > 0xFF) {
+                    histogram.outOfRange++;
+                } else {
+                    histogram.counts[(int) norm & 0xFF]++;
+                }
+            }
+            return histogram;
+        });
+
+        NormHistogram total = new NormHistogram();
+        for (NormHistogram partial : partials) {
+            total.merge(partial);
+        }
+        long end = System.nanoTime();
+
+        if (total.docs == 0) {
+            out.println("norm does not exist for field: " + field);
+            return;
+        }
+
+        // a zero norm means the doc does not have the field
+        long empty = total.counts[0];
+        long withLength = 0L;
+        double sumLength = 0.0;
+        for (int i = 1; i < total.counts.length; ++i) {
+            withLength += total.counts[i];
+            sumLength += total.counts[i] * estimatedLength(i);
+        }
+
+        out.println("docs: " + total.docs + ", empty: " + empty + ", not byte encoded: " + total.outOfRange);
+        if (withLength > 0) {
+            long[] lengthPercentiles = new long[PERCENTILES.length];
+            int percentileIdx = 0;
+            long count = 0L;
+            // larger encoded norms are shorter fields, walk from the top to get ascending lengths
+            for (int i = total.counts.length - 1; i > 0 && percentileIdx < PERCENTILES.length; --i) {
+                count += total.counts[i];
+                while (percentileIdx < PERCENTILES.length
+                        && (double) count / (double) withLength * 100.0 >= PERCENTILES[percentileIdx]) {
+                    lengthPercentiles[percentileIdx++] = Math.round(estimatedLength(i));
+                }
+            }
+            out.println(String.format("estimated field length: mean: %.2f", sumLength / withLength));
+            out.println("percentiles: " + Arrays.toString(PERCENTILES) + " => " + Arrays.toString(lengthPercentiles));
+        }
+        out.println("norm\testimated length\tcount");
+        for (int i = total.counts.length - 1; i > 0; --i) {
+            if (total.counts[i] > 0) {
+                out.println(String.format("%d\t%.0f\t%d", (byte) i, estimatedLength(i), total.counts[i]));
+            }
+        }
+        out.println("segments: " + leaves.size() + ", time: " + (end - start) / 1000000L + "ms");
+        out.flush();
+    }
+
     @Override
-    public void execute(String[] args, PrintStream out) throws Exception {
+    public void execute(String[] args, final PrintStream out) throws Exception {
         if (args.length < 1) {
-            out.println("usage: field doc1,doc2...");
+            out.println("usage: field doc1,doc2... | @docid_file | - (stdin), or field --stats");
             return;
         }
-        String field = args[0];
+        final String field = args[0];
 
         IndexReader reader = getContext().getIndexReader();
 
 
-        List<Integer> docidList = new ArrayList<Integer>();
+        int[] docids = null;
 
         int numPerPage = 20;
 
-        try {
-            String[] docListStrings = args[1].split(",");
-            for (String s : docListStrings) {
-                docidList.add(Integer.parseInt(s));
-            }
-        } catch (Exception e) {
-            out.println("invalid docid, all docs are shown");
-            docidList = null;
+        List<LeafReaderContext> leaves = reader.leaves();
+        if (args.length > 1 && STATS_OPTION.equals(args[1])) {
+            showStats(field, leaves, out);
+            return;
         }
 
-        List<LeafReaderContext> leaves = reader.leaves();
-        if (docidList != null && !docidList.isEmpty()) {
-            for (int i = leaves.size() - 1; i >= 0; --i) {
-                LeafReaderContext ctx = leaves.get(i);
-                for (Integer docid : docidList) {
-                    if (ctx.docBase <= docid) {
-                        LeafReader atomicReader = ctx.reader();
-                        FieldInfo finfo = atomicReader.getFieldInfos().fieldInfo(field);
+        if (args.length > 1) {
+            try {
+                docids = DocIdLookup.parseDocIds(args[1]);
+            } catch (NumberFormatException e) {
+                out.println("invalid docid, all docs are shown");
+            } catch (IOException e) {
+                out.println("unable to read docids: " + e.getMessage());
+                return;
+            }
+        }
 
-                        if (finfo == null || !finfo.hasNorms()) {
-                            out.println("norm does not exist for field: " + field);
-                            return;
-                        }
+        if (docids != null && docids.length > 0) {
+            DocIdLookup.lookup(leaves, docids, new DocIdLookup.SegmentVisitor() {
+                int segmentid;
+                LeafReaderContext leaf;
+                NumericDocValues norms;
+
+                @Override
+                public void startSegment(int segmentIdx, LeafReaderContext leaf) throws Exception {
+                    this.segmentid = segmentIdx;
+                    this.leaf = leaf;
+                    FieldInfo finfo = leaf.reader().getFieldInfos().fieldInfo(field);
+                    norms = finfo == null || !finfo.hasNorms() ? null : leaf.reader().getNormValues(field);
+                }
 
-                        showDocId(docid, ctx.docBase, atomicReader.getNormValues(field), out, i);
+                @Override
+                public void visit(int docid, int subid) throws Exception {
+                    if (norms == null) {
+                        out.println("norm does not exist for field: " + field + ", segment: " + segmentid
+                                + ", docid: " + docid);
+                        return;
                     }
+                    showDocId(docid, leaf.docBase, norms, out, segmentid);
                 }
-            }
+
+                @Override
+                public void outOfRange(int docid) {
+                    out.println("docid out of range: " + docid);
+                }
+            });
             out.flush();
         } else {
             for (int i = 0; i < leaves.size(); ++i) {
@@ -96,10 +218,11 @@ public class NormsCommand extends ClueCommand {
                 }
 
                 int maxDoc = atomicReader.maxDoc();
+                NumericDocValues norms = atomicReader.getNormValues(field);
 
                 for (int k = 0; k < maxDoc; ++k) {
 
-                    showDocId(k + ctx.docBase, ctx.docBase, atomicReader.getNormValues(field), out, i);
+                    showDocId(k + ctx.docBase, ctx.docBase, norms, out, i);
                     if (getContext().isInteractiveMode() && (k + 1) % numPerPage == 0) {
                         out.println("Ctrl-D to break");
                         int ch = System.in.read();
@@ -0,0 +1,175 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.LeafTaskRunner;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+public class PositionStatsCommand extends ClueCommand {
+
+    // bucket 0 holds the value 0, bucket k > 0 holds [2^(k-1), 2^k)
+    private static final int NUM_BUCKETS = Integer.SIZE + 1;
+
+    public PositionStatsCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "posstats";
+    }
+
+    @Override
+    public String help() {
+        return "positions per doc, position gaps, payload sizes and offset spans of a field, <field>";
+    }
+
+    private static int bucket(int value) {
+        return value <= 0 ? 0 : 32 - Integer.numberOfLeadingZeros(value);
+    }
+
+    private static class Distribution {
+        final long[] counts = new long[NUM_BUCKETS];
+        long count;
+        long sum;
+        long max;
+
+        void add(int value) {
+            counts[bucket(value)]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        void add(Distribution other) {
+            for (int i = 0; i < NUM_BUCKETS; ++i) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            sum += other.sum;
+            max = Math.max(max, other.max);
+        }
+
+        void print(String name, PrintStream out) {
+            double avg = count == 0 ? 0.0 : (double) sum / count;
+            out.println(String.format("%s: count: %d, sum: %d, avg: %.2f, max: %d", name, count, sum, avg, max));
+            for (int i = 0; i < NUM_BUCKETS; ++i) {
+                if (counts[i] == 0) continue;
+                String range = i == 0 ? "0" : String.format("[%d, %d)", 1L << (i - 1), 1L << i);
+                out.println(String.format("\t%-24s %d", range, counts[i]));
+            }
+        }
+    }
+
+    private static class PositionStats {
+        long terms;
+        // positions per posting, i.e. the term freq within a doc
+        final Distribution positions = new Distribution();
+        // delta to the previous position in the doc, the first one is taken from 0 like the codec does
+        final Distribution gaps = new Distribution();
+        final Distribution payloadBytes = new Distribution();
+        final Distribution offsetSpans = new Distribution();
+
+        void add(PositionStats other) {
+            terms += other.terms;
+            positions.add(other.positions);
+            gaps.add(other.gaps);
+            payloadBytes.add(other.payloadBytes);
+            offsetSpans.add(other.offsetSpans);
+        }
+    }
+
+    private static PositionStats segmentStats(LeafReader reader, String field, boolean hasPayloads,
+                                              boolean hasOffsets) throws IOException {
+        PositionStats stats = new PositionStats();
+        Terms terms = reader.terms(field);
+        if (terms == null || !terms.hasPositions()) {
+            return stats;
+        }
+        int flags = PostingsEnum.POSITIONS;
+        if (hasPayloads) flags |= PostingsEnum.PAYLOADS;
+        if (hasOffsets) flags |= PostingsEnum.OFFSETS;
+
+        TermsEnum te = terms.iterator();
+        PostingsEnum postings = null;
+        while (te.next() != null) {
+            stats.terms++;
+            postings = te.postings(postings, flags);
+            while (postings.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                int freq = postings.freq();
+                stats.positions.add(freq);
+                int prevPos = 0;
+                for (int i = 0; i < freq; ++i) {
+                    int pos = postings.nextPosition();
+                    stats.gaps.add(pos - prevPos);
+                    prevPos = pos;
+                    if (hasPayloads) {
+                        BytesRef payload = postings.getPayload();
+                        stats.payloadBytes.add(payload == null ? 0 : payload.length);
+                    }
+                    if (hasOffsets) {
+                        stats.offsetSpans.add(postings.endOffset() - postings.startOffset());
+                    }
+                }
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        if (args.length < 1) {
+            out.println("usage: field");
+            return;
+        }
+        final String field = args[0];
+
+        IndexReader reader = ctx.getIndexReader();
+        List<LeafReaderContext> leaves = reader.leaves();
+
+        boolean hasPositions = false;
+        boolean hasPayloads = false;
+        boolean hasOffsets = false;
+        for (LeafReaderContext leaf : leaves) {
+            FieldInfo finfo = leaf.reader().getFieldInfos().fieldInfo(field);
+            if (finfo == null) continue;
+            IndexOptions indexOptions = finfo.getIndexOptions();
+            hasPositions |= indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) >= 0;
+            hasOffsets |= indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0;
+            hasPayloads |= finfo.hasPayloads();
+        }
+        if (!hasPositions) {
+            out.println("field: " + field + " is not indexed with positions");
+            return;
+        }
+
+        final boolean payloads = hasPayloads;
+        final boolean offsets = hasOffsets;
+        long start = System.nanoTime();
+        List<PositionStats> segmentStats = LeafTaskRunner.run(ctx.getExecutorService(), leaves,
+                leaf -> segmentStats(leaf.reader(), field, payloads, offsets));
+        long end = System.nanoTime();
+
+        PositionStats total = new PositionStats();
+        for (PositionStats stats : segmentStats) {
+            total.add(stats);
+        }
+
+        out.println("field: " + field + ", terms (summed over segments): " + total.terms
+                + ", postings: " + total.positions.count + ", time: " + (end - start) / 1000000L + "ms");
+        total.positions.print("positions per doc", out);
+        total.gaps.print("position gaps", out);
+        if (payloads) {
+            total.payloadBytes.print("payload bytes", out);
+        }
+        if (offsets) {
+            total.offsetSpans.print("offset spans", out);
+        }
+        out.flush();
+    }
+}
@@ -2,15 +2,23 @@ package com.senseidb.clue.commands;
 
 import com.senseidb.clue.ClueContext;
 import com.senseidb.clue.api.BytesRefPrinter;
+import com.senseidb.clue.util.BufferedByteWriter;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.List;
 
 public class PostingsCommand extends ClueCommand {
 
+    private static final String COUNT_OPTION = "--count";
+    private static final String RANGE_OPTION = "--range";
+    private static final String TSV_OPTION = "--tsv";
+    private static final String USAGE = "usage: field:term [--count] [--range from:to] [--tsv]";
+
     public PostingsCommand(ClueContext ctx) {
         super(ctx);
     }
@@ -22,7 +30,107 @@ public class PostingsCommand extends ClueCommand {
 
     @Override
     public String help() {
-        return "iterating postings given a term, e.g. <fieldname:fieldvalue>";
+        return "iterating postings given a term, e.g. <fieldname:fieldvalue> [--count] [--range from:to] [--tsv]";
+    }
+
+    private static int firstDoc(PostingsEnum postings, int localFrom) throws IOException {
+        return localFrom <= 0 ? postings.nextDoc() : postings.advance(localFrom);
+    }
+
+    private static void countPostings(List<LeafReaderContext> leaves, String field, BytesRef term,
+                                      int from, int to, PrintStream out) throws IOException {
+        long docFreq = 0L;
+        long liveDocs = 0L;
+        long inRange = 0L;
+        long liveInRange = 0L;
+        int numSegments = 0;
+        boolean hasRange = from > 0 || to < Integer.MAX_VALUE;
+        PostingsEnum postings = null;
+        for (LeafReaderContext leaf : leaves) {
+            LeafReader atomicReader = leaf.reader();
+            Terms terms = atomicReader.terms(field);
+            if (terms == null) continue;
+            TermsEnum te = terms.iterator();
+            if (!te.seekExact(term)) continue;
+
+            numSegments++;
+            docFreq += te.docFreq();
+            Bits live = atomicReader.getLiveDocs();
+            int localFrom = from - leaf.docBase;
+            int localTo = (int) Math.min((long) to - leaf.docBase, atomicReader.maxDoc());
+
+            if (live != null) {
+                // deletes have to be checked doc by doc, count the range in the same pass
+                postings = te.postings(postings, PostingsEnum.NONE);
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    boolean isLive = live.get(doc);
+                    if (isLive) liveDocs++;
+                    if (doc >= localFrom && doc < localTo) {
+                        inRange++;
+                        if (isLive) liveInRange++;
+                    }
+                }
+                continue;
+            }
+
+            // no deletes, docFreq is exact and only the range window needs to be visited
+            liveDocs += te.docFreq();
+            if (hasRange && localTo > 0 && localFrom < atomicReader.maxDoc()) {
+                postings = te.postings(postings, PostingsEnum.NONE);
+                for (int doc = firstDoc(postings, localFrom); doc < localTo; doc = postings.nextDoc()) {
+                    inRange++;
+                    liveInRange++;
+                }
+            }
+        }
+        out.println("docFreq: " + docFreq + ", live docs: " + liveDocs + ", segments: " + numSegments);
+        if (hasRange) {
+            out.println("range: [" + from + ", " + to + "), docs: " + inRange + ", live docs: " + liveInRange);
+        }
+        out.flush();
+    }
+
+    private static void writePostings(List<LeafReaderContext> leaves, String field, BytesRef term,
+                                      int from, int to, PrintStream out) throws IOException {
+        PostingsEnum postings = null;
+        try (BufferedByteWriter writer = new BufferedByteWriter(out)) {
+            for (LeafReaderContext leaf : leaves) {
+                LeafReader atomicReader = leaf.reader();
+                int localFrom = from - leaf.docBase;
+                int localTo = (int) Math.min((long) to - leaf.docBase, atomicReader.maxDoc());
+                if (localTo <= 0 || localFrom >= atomicReader.maxDoc()) continue;
+                Terms terms = atomicReader.terms(field);
+                if (terms == null) continue;
+                TermsEnum te = terms.iterator();
+                if (!te.seekExact(term)) continue;
+
+                boolean hasPositions = terms.hasPositions();
+                boolean hasOffsets = terms.hasOffsets();
+                boolean hasPayloads = terms.hasPayloads();
+                postings = te.postings(postings, hasPositions ? PostingsEnum.ALL : PostingsEnum.FREQS);
+                for (int doc = firstDoc(postings, localFrom); doc < localTo; doc = postings.nextDoc()) {
+                    int freq = postings.freq();
+                    writer.write(leaf.docBase + doc).tab().write(freq);
+                    if (hasPositions) {
+                        for (int i = 0; i < freq; ++i) {
+                            writer.tab().write(postings.nextPosition());
+                            if (hasOffsets) {
+                                writer.write((byte) ':').write(postings.startOffset())
+                                        .write((byte) ':').write(postings.endOffset());
+                            }
+                            if (hasPayloads) {
+                                BytesRef payload = postings.getPayload();
+                                writer.write((byte) ':');
+                                if (payload != null) {
+                                    writer.writeHex(payload);
+                                }
+                            }
+                        }
+                    }
+                    writer.newLine();
+                }
+            }
+        }
     }
 
     @Override
@@ -36,7 +144,7 @@ public class PostingsCommand extends ClueCommand {
         }
 
         if (field != null) {
-            String[] parts = field.split(":");
+            String[] parts = field.split(":", 2);
             if (parts.length > 1) {
                 field = parts[0];
                 termVal = parts[1];
@@ -44,20 +152,65 @@ public class PostingsCommand extends ClueCommand {
         }
 
         if (field == null || termVal == null) {
-            out.println("usage: field:term");
+            out.println(USAGE);
             out.flush();
             return;
         }
 
-        BytesRefPrinter payloadPrinter = ctx.getPayloadBytesRefDisplay().getBytesRefPrinter(field);
+        boolean countOnly = false;
+        boolean tsv = false;
+        int from = 0;
+        int to = Integer.MAX_VALUE;
+        try {
+            for (int i = 1; i < args.length; ++i) {
+                if (COUNT_OPTION.equals(args[i])) {
+                    countOnly = true;
+                } else if (TSV_OPTION.equals(args[i])) {
+                    tsv = true;
+                } else if (RANGE_OPTION.equals(args[i])) {
+                    String[] range = args[++i].split(":", -1);
+                    if (range.length != 2) {
+                        throw new IllegalArgumentException("range must be from:to");
+                    }
+                    if (!range[0].isEmpty()) from = Integer.parseInt(range[0]);
+                    if (!range[1].isEmpty()) to = Integer.parseInt(range[1]);
+                } else {
+                    throw new IllegalArgumentException("unknown option: " + args[i]);
+                }
+            }
+        } catch (Exception e) {
+            out.println("invalid options: " + e.getMessage());
+            out.println(USAGE);
+            out.flush();
+            return;
+        }
 
         IndexReader reader = ctx.getIndexReader();
         List<LeafReaderContext> leaves = reader.leaves();
-        int docBase = 0;
+        BytesRef term = new BytesRef(termVal);
+
+        if (countOnly) {
+            countPostings(leaves, field, term, from, to, out);
+            return;
+        }
+
+        if (tsv) {
+            writePostings(leaves, field, term, from, to, out);
+            return;
+        }
+
+        BytesRefPrinter payloadPrinter = ctx.getPayloadBytesRefDisplay().getBytesRefPrinter(field);
+
         int numPerPage = 20;
         PostingsEnum postings = null;
         for (LeafReaderContext leaf : leaves) {
             LeafReader atomicReader = leaf.reader();
+            int docBase = leaf.docBase;
+            int localFrom = from - docBase;
+            int localTo = (int) Math.min((long) to - docBase, atomicReader.maxDoc());
+            if (localTo <= 0 || localFrom >= atomicReader.maxDoc()) {
+                continue;
+            }
             Terms terms = atomicReader.terms(field);
             if (terms == null) {
                 continue;
@@ -66,7 +219,7 @@ public class PostingsCommand extends ClueCommand {
 
             TermsEnum te = terms.iterator();
             int count = 0;
-            if (te.seekExact(new BytesRef(termVal))) {
+            if (te.seekExact(term)) {
 
                 if (hasPositions) {
                     postings = te.postings(postings, PostingsEnum.FREQS |
@@ -75,7 +228,7 @@ public class PostingsCommand extends ClueCommand {
                             PostingsEnum.OFFSETS);
 
                     int docid;
-                    while ((docid = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    for (docid = firstDoc(postings, localFrom); docid < localTo; docid = postings.nextDoc()) {
                         count++;
                         out.print("docid: " + (docid + docBase) + ", freq: " + postings.freq() + ", ");
                         for (int i = 0; i < postings.freq(); ++i) {
@@ -102,7 +255,7 @@ public class PostingsCommand extends ClueCommand {
                     postings = te.postings(postings, PostingsEnum.FREQS);
 
                     int docid;
-                    while ((docid = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    for (docid = firstDoc(postings, localFrom); docid < localTo; docid = postings.nextDoc()) {
                         count++;
                         out.println("docid: " + (docid + docBase) + ", freq: " + postings.freq());
                         if (ctx.isInteractiveMode() && count % numPerPage == 0) {
@@ -116,7 +269,6 @@ public class PostingsCommand extends ClueCommand {
                     }
                 }
             }
-            docBase += atomicReader.maxDoc();
         }
     }
 
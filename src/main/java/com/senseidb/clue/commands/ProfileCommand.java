@@ -0,0 +1,115 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.ProfilingIndexSearcher;
+import com.senseidb.clue.util.ProfilingIndexSearcher.ProfileNode;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+
+import java.io.PrintStream;
+
+public class ProfileCommand extends ClueCommand {
+
+    private static final int NUM_HITS = 10;
+
+    public ProfileCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "profile";
+    }
+
+    @Override
+    public String help() {
+        return "profiles a query, showing time and calls per clause and segment, input: <query string>";
+    }
+
+    private static String ms(long nanos) {
+        return String.format("%.3fms", nanos / 1000000.0);
+    }
+
+    private static String operations(long[] counts, long[] nanos) {
+        StringBuilder buf = new StringBuilder();
+        for (int op = 0; op < ProfilingIndexSearcher.OPERATIONS.length; ++op) {
+            if (counts[op] == 0) continue;
+            if (buf.length() > 0) buf.append(", ");
+            buf.append(ProfilingIndexSearcher.OPERATIONS[op]).append(": ").append(counts[op])
+                    .append(" / ").append(ms(nanos[op]));
+        }
+        return buf.toString();
+    }
+
+    private static void print(ProfileNode node, String indent, PrintStream out) {
+        out.println(indent + node.query + " (" + node.query.getClass().getSimpleName() + ")");
+        out.println(indent + "  create_weight: " + ms(node.createWeightNanos));
+        int numOps = ProfilingIndexSearcher.OPERATIONS.length;
+        long[] totalCounts = new long[numOps];
+        long[] totalNanos = new long[numOps];
+        for (int seg = 0; seg < node.counts.length; ++seg) {
+            long[] counts = node.counts[seg];
+            long[] nanos = node.nanos[seg];
+            if (counts[ProfilingIndexSearcher.BUILD_SCORER] == 0) continue;
+            long segmentNanos = 0L;
+            for (int op = 0; op < numOps; ++op) {
+                totalCounts[op] += counts[op];
+                totalNanos[op] += nanos[op];
+                segmentNanos += nanos[op];
+            }
+            out.println(indent + "  segment " + seg + ": " + ms(segmentNanos) + ", " + operations(counts, nanos));
+        }
+        long total = 0L;
+        for (long nanos : totalNanos) {
+            total += nanos;
+        }
+        if (totalCounts[ProfilingIndexSearcher.BUILD_SCORER] == 0) {
+            out.println(indent + "  all segments: no scorer built");
+        } else {
+            out.println(indent + "  all segments: " + ms(total) + ", " + operations(totalCounts, totalNanos));
+        }
+        for (ProfileNode child : node.children) {
+            print(child, indent + "    ", out);
+        }
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        if (args.length == 0) {
+            out.println("usage: query");
+            return;
+        }
+        StringBuilder buf = new StringBuilder();
+        for (String s : args) {
+            buf.append(s).append(" ");
+        }
+        final String qstring = buf.toString();
+        Query q;
+        try {
+            q = ctx.getQueryResultCache().getQuery(qstring, () -> ctx.getQueryBuilder().build(qstring));
+        } catch (Exception e) {
+            out.println("cannot parse query: " + e.getMessage());
+            return;
+        }
+
+        IndexReader r = ctx.getIndexReader();
+        // one thread and no query cache, so the times are those of the clauses themselves
+        ProfilingIndexSearcher searcher = new ProfilingIndexSearcher(r);
+        long start = System.nanoTime();
+        Query rewritten = searcher.rewrite(q);
+        long rewriteNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        TopDocs td = searcher.search(rewritten, NUM_HITS);
+        long searchNanos = System.nanoTime() - start;
+
+        out.println("parsed query: " + q);
+        out.println("rewritten query: " + rewritten);
+        out.println("numhits: " + td.totalHits + ", rewrite: " + ms(rewriteNanos) + ", search: " + ms(searchNanos));
+        for (ProfileNode root : searcher.getProfile()) {
+            print(root, "", out);
+        }
+        out.println("times include the sub clauses and the profiling overhead, scores are collected doc by doc");
+        out.flush();
+    }
+}
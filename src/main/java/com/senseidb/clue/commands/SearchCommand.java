@@ -1,13 +1,53 @@
 package com.senseidb.clue.commands;
 
 import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.BufferedByteWriter;
+import com.senseidb.clue.util.QueryResultCache;
+import com.senseidb.clue.util.SliceTimingIndexSearcher;
+import com.senseidb.clue.util.SliceTimingIndexSearcher.SliceTiming;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.*;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 
-import java.io.PrintStream;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
 
 public class SearchCommand extends ClueCommand {
 
+    private static final String SORT_OPTION = "--sort";
+    private static final String SIZE_OPTION = "--size";
+    private static final String CURSOR_OPTION = "--cursor";
+    private static final String EARLY_OPTION = "--early";
+    private static final String COUNT_OPTION = "--count";
+    private static final String ALL_OPTION = "--all";
+    private static final String OUTPUT_OPTION = "--output";
+    private static final int DEFAULT_SIZE = 10;
+
+    // value types in a cursor
+    private static final byte NULL_VALUE = 0;
+    private static final byte LONG_VALUE = 1;
+    private static final byte INT_VALUE = 2;
+    private static final byte DOUBLE_VALUE = 3;
+    private static final byte FLOAT_VALUE = 4;
+    private static final byte BYTES_VALUE = 5;
+
+    /**
+     * Hits of an early terminated search, the total is only a lower bound. Kept as the cached value
+     * so cache hits are reported the same way.
+     */
+    private static class EarlyTerminatedTopDocs extends TopFieldDocs {
+        EarlyTerminatedTopDocs(TopFieldDocs topDocs) {
+            super(topDocs.totalHits, topDocs.scoreDocs, topDocs.fields, topDocs.getMaxScore());
+        }
+    }
+
     public SearchCommand(ClueContext ctx) {
         super(ctx);
     }
@@ -19,24 +59,304 @@ public class SearchCommand extends ClueCommand {
 
     @Override
     public String help() {
-        return "executes a query against the index, input: <query string>";
+        return "executes a query against the index, input: <query string> [" + SORT_OPTION + " field[:type][:desc],...] ["
+                + SIZE_OPTION + " n] [" + CURSOR_OPTION + " token] [" + EARLY_OPTION + "] | [" + COUNT_OPTION + "] | ["
+                + ALL_OPTION + " [" + OUTPUT_OPTION + " file]], "
+                + "type is one of long, int, double, float, string, it is required for numeric docvalues, "
+                + "string is inferred for sorted docvalues, "
+                + COUNT_OPTION + " only counts the hits, " + ALL_OPTION + " lists every hit in docid order without scoring";
+    }
+
+    static DocValuesType docValuesType(IndexReader reader, String field) {
+        for (LeafReaderContext leaf : reader.leaves()) {
+            FieldInfo finfo = leaf.reader().getFieldInfos().fieldInfo(field);
+            if (finfo != null && finfo.getDocValuesType() != DocValuesType.NONE) {
+                return finfo.getDocValuesType();
+            }
+        }
+        return DocValuesType.NONE;
+    }
+
+    /**
+     * Parses a comma separated list of field[:type][:desc|asc], score and doc sort by relevance and docid.
+     */
+    static Sort parseSort(IndexReader reader, String spec) {
+        List<SortField> sortFields = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String[] parts = part.split(":");
+            String field = parts[0];
+            String type = null;
+            boolean reverse = false;
+            boolean ascending = false;
+            for (int i = 1; i < parts.length; ++i) {
+                if ("desc".equals(parts[i])) {
+                    reverse = true;
+                } else if ("asc".equals(parts[i])) {
+                    ascending = true;
+                } else {
+                    type = parts[i];
+                }
+            }
+
+            if ("score".equals(field)) {
+                // relevance is descending unless asked otherwise
+                sortFields.add(new SortField(null, SortField.Type.SCORE, ascending));
+                continue;
+            }
+            if ("doc".equals(field)) {
+                sortFields.add(new SortField(null, SortField.Type.DOC, reverse));
+                continue;
+            }
+
+            DocValuesType dvType = docValuesType(reader, field);
+            SortField.Type sortType;
+            if (type == null) {
+                switch (dvType) {
+                    case NUMERIC:
+                    case SORTED_NUMERIC:
+                        // the docvalues do not tell whether the longs hold ints, longs or the bits of floats or doubles
+                        throw new IllegalArgumentException("sort type needed for numeric docvalues field: " + field
+                                + ", one of long, int, double, float");
+                    case SORTED:
+                    case SORTED_SET:
+                        sortType = SortField.Type.STRING;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("no sortable docvalues for field: " + field);
+                }
+            } else {
+                switch (type) {
+                    case "long": sortType = SortField.Type.LONG; break;
+                    case "int": sortType = SortField.Type.INT; break;
+                    case "double": sortType = SortField.Type.DOUBLE; break;
+                    case "float": sortType = SortField.Type.FLOAT; break;
+                    case "string": sortType = SortField.Type.STRING; break;
+                    default:
+                        throw new IllegalArgumentException("unknown sort type: " + type);
+                }
+            }
+
+            if (dvType == DocValuesType.SORTED_NUMERIC) {
+                sortFields.add(new SortedNumericSortField(field, sortType, reverse));
+            } else if (dvType == DocValuesType.SORTED_SET) {
+                sortFields.add(new SortedSetSortField(field, reverse));
+            } else {
+                sortFields.add(new SortField(field, sortType, reverse));
+            }
+        }
+        return new Sort(sortFields.toArray(new SortField[sortFields.size()]));
+    }
+
+    /**
+     * The cursor holds the last hit of a page: docid, score and the sort values if sorted.
+     */
+    static String encodeCursor(ScoreDoc last) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(last.doc);
+            out.writeFloat(last.score);
+            Object[] fields = last instanceof FieldDoc ? ((FieldDoc) last).fields : null;
+            out.writeInt(fields == null ? -1 : fields.length);
+            if (fields != null) {
+                for (Object value : fields) {
+                    if (value == null) {
+                        out.writeByte(NULL_VALUE);
+                    } else if (value instanceof Long) {
+                        out.writeByte(LONG_VALUE);
+                        out.writeLong((Long) value);
+                    } else if (value instanceof Integer) {
+                        out.writeByte(INT_VALUE);
+                        out.writeInt((Integer) value);
+                    } else if (value instanceof Double) {
+                        out.writeByte(DOUBLE_VALUE);
+                        out.writeDouble((Double) value);
+                    } else if (value instanceof Float) {
+                        out.writeByte(FLOAT_VALUE);
+                        out.writeFloat((Float) value);
+                    } else if (value instanceof BytesRef) {
+                        BytesRef ref = (BytesRef) value;
+                        out.writeByte(BYTES_VALUE);
+                        out.writeInt(ref.length);
+                        out.write(ref.bytes, ref.offset, ref.length);
+                    } else {
+                        throw new IOException("unsupported sort value: " + value.getClass());
+                    }
+                }
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    static ScoreDoc decodeCursor(String token) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            int doc = in.readInt();
+            float score = in.readFloat();
+            int numFields = in.readInt();
+            if (numFields < 0) {
+                return new ScoreDoc(doc, score);
+            }
+            Object[] fields = new Object[numFields];
+            for (int i = 0; i < numFields; ++i) {
+                byte type = in.readByte();
+                switch (type) {
+                    case NULL_VALUE: fields[i] = null; break;
+                    case LONG_VALUE: fields[i] = in.readLong(); break;
+                    case INT_VALUE: fields[i] = in.readInt(); break;
+                    case DOUBLE_VALUE: fields[i] = in.readDouble(); break;
+                    case FLOAT_VALUE: fields[i] = in.readFloat(); break;
+                    case BYTES_VALUE:
+                        byte[] value = new byte[in.readInt()];
+                        in.readFully(value);
+                        fields[i] = new BytesRef(value);
+                        break;
+                    default:
+                        throw new IOException("invalid cursor");
+                }
+            }
+            return new FieldDoc(doc, score, fields);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid cursor", e);
+        }
+    }
+
+    private static String sortValueString(Object value) {
+        if (value instanceof BytesRef) {
+            return ((BytesRef) value).utf8ToString();
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * @return null if the index sort of some segment is not compatible with the search sort
+     */
+    private static String checkIndexSort(IndexReader reader, Sort sort) {
+        int sorted = 0;
+        for (LeafReaderContext leaf : reader.leaves()) {
+            Sort indexSort = leaf.reader().getIndexSort();
+            if (indexSort != null) {
+                if (!EarlyTerminatingSortingCollector.canEarlyTerminate(sort, indexSort)) {
+                    return null;
+                }
+                sorted++;
+            }
+        }
+        return sorted + " of " + reader.leaves().size() + " segments sorted compatibly with the index sort";
+    }
+
+    /**
+     * Writes the global docid of every live hit, one per line, segment by segment in docid order.
+     * @return number of hits written
+     */
+    private static long writeAll(IndexSearcher searcher, Query q, BufferedByteWriter writer) throws IOException {
+        Weight weight = searcher.createNormalizedWeight(q, false);
+        long count = 0L;
+        for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+            Scorer scorer = weight.scorer(leaf);
+            if (scorer == null) {
+                continue;
+            }
+            Bits liveDocs = leaf.reader().getLiveDocs();
+            TwoPhaseIterator twoPhase = scorer.twoPhaseIterator();
+            DocIdSetIterator iter = twoPhase == null ? scorer.iterator() : twoPhase.approximation();
+            for (int doc = iter.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iter.nextDoc()) {
+                if ((liveDocs == null || liveDocs.get(doc)) && (twoPhase == null || twoPhase.matches())) {
+                    writer.write(leaf.docBase + doc).newLine();
+                    count++;
+                }
+            }
+        }
+        return count;
     }
 
     @Override
     public void execute(String[] args, PrintStream out) throws Exception {
         IndexReader r = ctx.getIndexReader();
-        IndexSearcher searcher = new IndexSearcher(r);
-        Query q;
-        if (args.length == 0) {
+        String sortSpec = null;
+        String cursor = null;
+        // null unless given, --count and --all take no size
+        Integer size = null;
+        boolean early = false;
+        boolean count = false;
+        boolean all = false;
+        String output = null;
+        StringBuilder buf = new StringBuilder();
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                if (SORT_OPTION.equals(args[i]) && i + 1 < args.length) {
+                    sortSpec = args[++i];
+                } else if (SIZE_OPTION.equals(args[i]) && i + 1 < args.length) {
+                    size = Integer.parseInt(args[++i]);
+                } else if (CURSOR_OPTION.equals(args[i]) && i + 1 < args.length) {
+                    cursor = args[++i];
+                } else if (EARLY_OPTION.equals(args[i])) {
+                    early = true;
+                } else if (COUNT_OPTION.equals(args[i])) {
+                    count = true;
+                } else if (ALL_OPTION.equals(args[i])) {
+                    all = true;
+                } else if (OUTPUT_OPTION.equals(args[i]) && i + 1 < args.length) {
+                    output = args[++i];
+                } else {
+                    buf.append(args[i]).append(" ");
+                }
+            }
+        } catch (NumberFormatException e) {
+            out.println("invalid page size: " + e.getMessage());
+            return;
+        }
+        if (size != null && size <= 0) {
+            out.println("page size must be positive");
+            return;
+        }
+        if ((count || all) && (sortSpec != null || cursor != null || early || size != null)) {
+            out.println(COUNT_OPTION + " and " + ALL_OPTION + " do not collect top hits, they cannot be paged or sorted");
+            return;
+        }
+        if (count && all) {
+            out.println("use either " + COUNT_OPTION + " or " + ALL_OPTION);
+            return;
+        }
+        if (output != null && !all) {
+            out.println(OUTPUT_OPTION + " needs " + ALL_OPTION);
+            return;
+        }
+
+        final Sort sort;
+        try {
+            sort = sortSpec == null ? null : parseSort(r, sortSpec);
+        } catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+            return;
+        }
+        if (early && sort == null) {
+            out.println(EARLY_OPTION + " needs a " + SORT_OPTION);
+            return;
+        }
+
+        final ScoreDoc after;
+        try {
+            after = cursor == null ? null : decodeCursor(cursor);
+        } catch (IOException e) {
+            out.println("invalid cursor: " + cursor);
+            return;
+        }
+        if (after != null && (sort == null) != !(after instanceof FieldDoc)) {
+            out.println("cursor does not match the sort");
+            return;
+        }
+
+        // segments are searched in parallel on the shared worker pool
+        final SliceTimingIndexSearcher searcher = new SliceTimingIndexSearcher(r, ctx.getExecutorService());
+        QueryResultCache cache = ctx.getQueryResultCache();
+        final Query q;
+        final String qstring;
+        if (buf.length() == 0) {
             q = new MatchAllDocsQuery();
+            qstring = q.toString();
         } else {
-            StringBuilder buf = new StringBuilder();
-            for (String s : args) {
-                buf.append(s).append(" ");
-            }
-            String qstring = buf.toString();
+            qstring = buf.toString();
             try {
-                q = ctx.getQueryBuilder().build(qstring);
+                q = cache.getQuery(qstring, () -> ctx.getQueryBuilder().build(qstring));
             } catch (Exception e) {
                 out.println("cannot parse query: " + e.getMessage());
                 return;
@@ -44,17 +364,119 @@ public class SearchCommand extends ClueCommand {
         }
 
         out.println("parsed query: " + q);
+        if (sort != null) {
+            out.println("sort: " + sort);
+        }
+
+        if (count) {
+            // no scores and no priority queue, term and match all queries are answered from the index stats
+            long start = System.nanoTime();
+            int numHits = searcher.count(q);
+            long end = System.nanoTime();
+            out.println("numhits: " + numHits);
+            out.println("time: " + (end - start) / 1000000L + "ms");
+            out.flush();
+            return;
+        }
+
+        if (all) {
+            // hits are written as they are found, in docid order, so the segments are visited one by one
+            IndexSearcher allSearcher = new IndexSearcher(r);
+            long start = System.nanoTime();
+            long numHits;
+            if (output == null) {
+                try (BufferedByteWriter writer = new BufferedByteWriter(out)) {
+                    numHits = writeAll(allSearcher, q, writer);
+                }
+            } else {
+                try (OutputStream fileOut = new FileOutputStream(output);
+                     BufferedByteWriter writer = new BufferedByteWriter(fileOut)) {
+                    numHits = writeAll(allSearcher, q, writer);
+                }
+            }
+            long end = System.nanoTime();
+            out.println("numhits: " + numHits + (output == null ? "" : ", written to: " + output));
+            out.println("time: " + (end - start) / 1000000L + "ms");
+            out.flush();
+            return;
+        }
+
+        if (early) {
+            String sortedSegments = checkIndexSort(r, sort);
+            if (sortedSegments == null) {
+                out.println("cannot terminate early, the index sort is not compatible with: " + sort);
+                return;
+            }
+            out.println(sortedSegments);
+        }
 
-        long start = System.currentTimeMillis();
-        TopDocs td = searcher.search(q, 10);
-        long end = System.currentTimeMillis();
+        String resultKey = null;
+        if (sort != null || after != null) {
+            resultKey = "sort=" + sort + ";after=" + cursor + (early ? ";early" : "");
+        }
+        final int numHits = size == null ? DEFAULT_SIZE : size;
+        // the early terminating wrapper counts the hits before the cursor too, and would stop a sorted
+        // segment before reaching the page, so later pages are collected in full
+        final boolean earlyTermination = early && after == null;
+        if (early && after != null) {
+            out.println("early termination only applies to the first page, collecting all hits after the cursor");
+        }
+        long misses = cache.getTopDocsMisses();
+        long start = System.nanoTime();
+        TopDocs td;
+        try {
+            td = cache.getTopDocs(qstring, resultKey, numHits, ctx.getReaderVersion(), () -> {
+                if (sort == null) {
+                    return searcher.searchAfter(after, q, numHits);
+                }
+                if (!earlyTermination) {
+                    return searcher.searchAfter(after, q, numHits, sort);
+                }
+                // only the first hits of every sorted segment are collected
+                TopFieldCollector collector = TopFieldCollector.create(sort, numHits, (FieldDoc) after, true, false, false);
+                EarlyTerminatingSortingCollector earlyCollector = new EarlyTerminatingSortingCollector(collector, sort, numHits);
+                searcher.search(q, earlyCollector);
+                TopFieldDocs topDocs = (TopFieldDocs) collector.topDocs();
+                if (!earlyCollector.terminatedEarly()) {
+                    return topDocs;
+                }
+                return new EarlyTerminatedTopDocs(topDocs);
+            });
+        } catch (ClassCastException | IllegalArgumentException e) {
+            out.println("cursor does not match the sort");
+            return;
+        }
+        long end = System.nanoTime();
+        boolean cached = cache.getTopDocsMisses() == misses;
+        boolean terminatedEarly = td instanceof EarlyTerminatedTopDocs;
 
-        out.println("numhits: " + td.totalHits);
-        out.println("time: " + (end - start) + "ms");
+        out.println("numhits: " + td.totalHits + (terminatedEarly ? " (terminated early, lower bound)" : ""));
+        out.println("time: " + (end - start) / 1000000L + "ms" + (cached ? " (cached)" : ""));
         ScoreDoc[] docs = td.scoreDocs;
         for (ScoreDoc doc : docs) {
-            out.println("doc: " + doc.doc + ", score: " + doc.score);
+            if (doc instanceof FieldDoc) {
+                Object[] fields = ((FieldDoc) doc).fields;
+                String[] values = new String[fields.length];
+                for (int i = 0; i < fields.length; ++i) {
+                    values[i] = sortValueString(fields[i]);
+                }
+                out.println("doc: " + doc.doc + (Float.isNaN(doc.score) ? "" : ", score: " + doc.score)
+                        + ", sort: " + Arrays.toString(values));
+            } else {
+                out.println("doc: " + doc.doc + ", score: " + doc.score);
+            }
+        }
+        if (docs.length == numHits) {
+            out.println("next page: " + CURSOR_OPTION + " " + encodeCursor(docs[docs.length - 1]));
+        }
+
+        if (!cached) {
+            out.println("slices:");
+            for (SliceTiming timing : searcher.getSliceTimings()) {
+                out.println(String.format("\tsegments %s: %.3fms", timing.segments, timing.nanos / 1000000.0));
+            }
         }
+        out.flush();
     }
 
 }
@@ -2,18 +2,33 @@ package com.senseidb.clue.commands;
 
 import com.senseidb.clue.ClueContext;
 import com.senseidb.clue.api.BytesRefPrinter;
+import com.senseidb.clue.util.TermsEnumMerger;
 import org.apache.lucene.index.*;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
 import org.apache.lucene.util.BytesRef;
-
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
+import org.apache.lucene.util.automaton.Operations;
+import org.apache.lucene.util.automaton.RegExp;
+import org.apache.lucene.util.automaton.TooComplexToDeterminizeException;
+
+import java.io.IOException;
 import java.io.PrintStream;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class TermsCommand extends ClueCommand {
 
+    private static final String RANGE_OPEN = "*";
+    private static final String AFTER_OPTION = "--after";
+    private static final String CURSOR_OPTION = "--cursor";
+    private static final String LIMIT_OPTION = "--limit";
+
     public TermsCommand(ClueContext ctx) {
         super(ctx);
     }
@@ -25,7 +40,65 @@ public class TermsCommand extends ClueCommand {
 
     @Override
     public String help() {
-        return "gets terms from the index, <field:term>, term can be a prefix";
+        return "gets terms from the index, <field:term>, term can be a wildcard (e.g. a*b?), "
+                + "/regex/, fuzzy term~N or range [lower,upper] ({} excludes, * is open), "
+                + "page with --limit n and --after term or the printed --cursor token";
+    }
+
+    /**
+     * @return the automaton matching the pattern, or null if the pattern is a plain term
+     */
+    private static CompiledAutomaton compilePattern(String pattern) {
+        int len = pattern.length();
+        if (len >= 2 && pattern.charAt(0) == '/' && pattern.charAt(len - 1) == '/') {
+            return new CompiledAutomaton(new RegExp(pattern.substring(1, len - 1)).toAutomaton());
+        }
+
+        char first = pattern.isEmpty() ? 0 : pattern.charAt(0);
+        char last = pattern.isEmpty() ? 0 : pattern.charAt(len - 1);
+        if ((first == '[' || first == '{') && (last == ']' || last == '}')) {
+            String[] bounds = pattern.substring(1, len - 1).split(",", -1);
+            if (bounds.length != 2) {
+                throw new IllegalArgumentException("range must be [lower,upper]");
+            }
+            BytesRef lower = RANGE_OPEN.equals(bounds[0]) || bounds[0].isEmpty() ? null : new BytesRef(bounds[0]);
+            BytesRef upper = RANGE_OPEN.equals(bounds[1]) || bounds[1].isEmpty() ? null : new BytesRef(bounds[1]);
+            Automaton range = TermRangeQuery.toAutomaton(lower, upper, first == '[', last == ']');
+            return new CompiledAutomaton(range, null, true, Operations.DEFAULT_MAX_DETERMINIZED_STATES, true);
+        }
+
+        int fuzzyIdx = pattern.lastIndexOf('~');
+        if (fuzzyIdx > 0) {
+            int maxEdits = LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE;
+            if (fuzzyIdx < len - 1) {
+                maxEdits = Integer.parseInt(pattern.substring(fuzzyIdx + 1));
+            }
+            if (maxEdits < 0 || maxEdits > LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE) {
+                throw new IllegalArgumentException("max edits must be between 0 and "
+                        + LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE);
+            }
+            String term = pattern.substring(0, fuzzyIdx);
+            return new CompiledAutomaton(new LevenshteinAutomata(term, true).toAutomaton(maxEdits));
+        }
+
+        if (pattern.indexOf(WildcardQuery.WILDCARD_STRING) >= 0 || pattern.indexOf(WildcardQuery.WILDCARD_CHAR) >= 0) {
+            return new CompiledAutomaton(WildcardQuery.toAutomaton(new Term("", pattern)));
+        }
+        return null;
+    }
+
+    /**
+     * @return an unpositioned enum over the terms matching the automaton, starting after the given term
+     * if the terms dictionary can do so, otherwise the caller seeks
+     */
+    private static TermsEnum termsEnum(Terms terms, CompiledAutomaton automaton, BytesRef after) throws IOException {
+        if (automaton == null || automaton.type == CompiledAutomaton.AUTOMATON_TYPE.ALL) {
+            return terms.iterator();
+        }
+        if (after != null && automaton.type == CompiledAutomaton.AUTOMATON_TYPE.NORMAL) {
+            return terms.intersect(automaton, after);
+        }
+        return automaton.getTermsEnum(terms);
     }
 
     @Override
@@ -39,90 +112,113 @@ public class TermsCommand extends ClueCommand {
         }
 
         if (field != null) {
-            String[] parts = field.split(":");
+            String[] parts = field.split(":", 2);
             if (parts.length > 1) {
                 field = parts[0];
                 termVal = parts[1];
             }
         } else {
-            out.println("Usage: field:value");
+            out.println("Usage: field:value [--after term | --cursor token] [--limit n]");
+            return;
+        }
+
+        BytesRef after = null;
+        int limit = -1;
+        try {
+            for (int i = 1; i < args.length; ++i) {
+                if (AFTER_OPTION.equals(args[i])) {
+                    after = new BytesRef(args[++i]);
+                } else if (CURSOR_OPTION.equals(args[i])) {
+                    after = new BytesRef(Base64.getUrlDecoder().decode(args[++i]));
+                } else if (LIMIT_OPTION.equals(args[i])) {
+                    limit = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("unknown option: " + args[i]);
+                }
+            }
+        } catch (Exception e) {
+            out.println("invalid options: " + e.getMessage());
+            out.println("Usage: field:value [--after term | --cursor token] [--limit n]");
             return;
         }
 
         BytesRefPrinter bytesRefPrinter = ctx.getTermBytesRefDisplay().getBytesRefPrinter(field);
 
         boolean isExact = false;
+        CompiledAutomaton automaton = null;
 
         if (termVal != null) {
-            if (termVal.endsWith("*")) {
-                termVal = termVal.substring(0, termVal.length() - 1);
-            } else {
-                isExact = true;
+            try {
+                automaton = compilePattern(termVal);
+            } catch (IllegalArgumentException e) {
+                out.println("invalid term pattern: " + termVal + ", " + e.getMessage());
+                return;
+            } catch (TooComplexToDeterminizeException e) {
+                out.println("pattern too complex: " + termVal);
+                return;
             }
+            isExact = automaton == null;
         }
 
         IndexReader reader = ctx.getIndexReader();
         List<LeafReaderContext> leaves = reader.leaves();
-        TreeMap<BytesRef, TermsEnum> termMap = null;
-        HashMap<BytesRef, AtomicInteger> termCountMap = new HashMap<BytesRef, AtomicInteger>();
-
-        int numCount = 0;
-        int numPerPage = 20;
+        List<TermsEnum> termsEnums = new ArrayList<>(leaves.size());
 
         for (LeafReaderContext leaf : leaves) {
-            LeafReader atomicReader = leaf.reader();
-
-            Terms terms = atomicReader.fields().terms(field);
-
-            if (terms == null) {
-                continue;
+            Terms terms = leaf.reader().terms(field);
+            if (terms != null) {
+                // the automaton lets the terms dictionary skip blocks that cannot match
+                termsEnums.add(termsEnum(terms, automaton, after));
             }
+        }
 
-            if (termMap == null) {
-                termMap = new TreeMap<BytesRef, TermsEnum>();
-            }
+        if (termsEnums.isEmpty()) {
+            out.flush();
+            return;
+        }
 
+        TermsEnumMerger termsMerger = new TermsEnumMerger(termsEnums);
 
-            TermsEnum te = terms.iterator();
-            BytesRef termBytes;
-            if (termVal != null) {
-                if (isExact) {
-                    if (!te.seekExact(new BytesRef(termVal))) {
-                        continue;
-                    }
-                } else {
-                    te.seekCeil(new BytesRef(termVal));
-                }
-                termBytes = te.term();
-            } else {
-                termBytes = te.next();
+        int numCount = 0;
+        int numPerPage = 20;
+        BytesRefBuilder lastTerm = new BytesRefBuilder();
+
+        BytesRef termBytes;
+        BytesRef target = null;
+        if (isExact) {
+            target = new BytesRef(termVal);
+            termBytes = termsMerger.seekCeil(target);
+        } else if (after != null && (automaton == null || automaton.type == CompiledAutomaton.AUTOMATON_TYPE.ALL)) {
+            // seekCeil on every segment, so a page never enumerates the terms before the cursor
+            termBytes = termsMerger.seekCeil(after);
+            if (termBytes != null && termBytes.bytesEquals(after)) {
+                termBytes = termsMerger.next();
             }
-
-            while (true) {
-                if (termBytes == null) break;
-                AtomicInteger count = termCountMap.get(termBytes);
-                if (count == null) {
-                    termCountMap.put(termBytes, new AtomicInteger(te.docFreq()));
-                    termMap.put(termBytes, te);
-                    break;
-                }
-                count.getAndAdd(te.docFreq());
-                if (isExact) {
-                    termBytes = null;
-                } else {
-                    termBytes = te.next();
-                }
+        } else {
+            termBytes = termsMerger.next();
+            // single term and empty automatons cannot seek, there is at most one term to skip
+            while (after != null && termBytes != null && termBytes.compareTo(after) <= 0) {
+                termBytes = termsMerger.next();
             }
         }
 
-        while (termMap != null && !termMap.isEmpty()) {
+        while (termBytes != null) {
+            if (isExact && !termBytes.bytesEquals(target)) {
+                break;
+            }
+            if (limit >= 0 && numCount == limit) {
+                out.println("next page: " + CURSOR_OPTION + " " + Base64.getUrlEncoder().withoutPadding()
+                        .encodeToString(Arrays.copyOfRange(lastTerm.bytes(), 0, lastTerm.length())));
+                break;
+            }
             numCount++;
-            Entry<BytesRef, TermsEnum> entry = termMap.pollFirstEntry();
-            if (entry == null) break;
-            BytesRef key = entry.getKey();
-            AtomicInteger count = termCountMap.remove(key);
-            out.println(bytesRefPrinter.print(key) + " (" + count + ") ");
-            if (ctx.isInteractiveMode() && numCount % numPerPage == 0) {
+            out.println(bytesRefPrinter.print(termBytes) + " (" + termsMerger.docFreq() + ") ");
+            if (isExact) {
+                break;
+            }
+            if (limit >= 0) {
+                lastTerm.copyBytes(termBytes);
+            } else if (ctx.isInteractiveMode() && numCount % numPerPage == 0) {
                 out.println("Press q to break");
                 int ch = System.in.read();
                 if (ch == 'q' || ch == 'Q') {
@@ -130,25 +226,9 @@ public class TermsCommand extends ClueCommand {
                     return;
                 }
             }
-            TermsEnum te = entry.getValue();
-            BytesRef nextKey = null;
-            if (!isExact) {
-                nextKey = te.next();
-            }
-            while (true) {
-                if (nextKey == null) break;
-                count = termCountMap.get(nextKey);
-                if (count == null) {
-                    termCountMap.put(nextKey, new AtomicInteger(te.docFreq()));
-                    termMap.put(nextKey, te);
-                    break;
-                }
-                count.getAndAdd(te.docFreq());
-                nextKey = te.next();
-            }
+            termBytes = termsMerger.next();
         }
         out.flush();
     }
 
 }
-
@@ -0,0 +1,288 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.api.BytesRefPrinter;
+import com.senseidb.clue.util.LeafTaskRunner;
+import org.apache.lucene.index.*;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.PriorityQueue;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+
+public class TopTermsCommand extends ClueCommand {
+
+    private static final int DEFAULT_K = 10;
+    private static final String TTF_OPTION = "--ttf";
+
+    public TopTermsCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "topterms";
+    }
+
+    @Override
+    public String help() {
+        return "top K terms of a field by docFreq, <field> <k> [--ttf to rank by totalTermFreq]";
+    }
+
+    private static class TermStat {
+        final BytesRefBuilder term = new BytesRefBuilder();
+        long stat;
+    }
+
+    private static class TermStatQueue extends PriorityQueue<TermStat> {
+        TermStatQueue(int size) {
+            super(size);
+        }
+
+        @Override
+        protected boolean lessThan(TermStat a, TermStat b) {
+            if (a.stat != b.stat) {
+                return a.stat < b.stat;
+            }
+            return a.term.get().compareTo(b.term.get()) > 0;
+        }
+    }
+
+    private static class SegmentTop {
+        final List<BytesRef> terms = new ArrayList<>();
+        // largest stat a term outside of this segment's top K can have in the segment
+        long threshold = 0L;
+    }
+
+    private static long stat(TermsEnum te, boolean byTtf) throws IOException {
+        return byTtf ? te.totalTermFreq() : te.docFreq();
+    }
+
+    private static SegmentTop segmentTop(Terms terms, int k, boolean byTtf) throws IOException {
+        SegmentTop segmentTop = new SegmentTop();
+        if (terms == null) {
+            return segmentTop;
+        }
+        TermStatQueue pq = new TermStatQueue(k);
+        TermStat spare = null;
+        TermsEnum te = terms.iterator();
+        BytesRef term;
+        while ((term = te.next()) != null) {
+            long stat = stat(te, byTtf);
+            if (pq.size() == k && stat <= pq.top().stat) {
+                continue;
+            }
+            if (spare == null) {
+                spare = new TermStat();
+            }
+            spare.term.copyBytes(term);
+            spare.stat = stat;
+            spare = pq.insertWithOverflow(spare);
+        }
+        if (pq.size() == k) {
+            segmentTop.threshold = pq.top().stat;
+        }
+        while (pq.size() > 0) {
+            segmentTop.terms.add(pq.pop().term.toBytesRef());
+        }
+        return segmentTop;
+    }
+
+    /**
+     * Collects every term of the segment whose stat times the number of segments exceeds the bound,
+     * any term with a global stat above the bound has at least one such segment.
+     */
+    private static List<BytesRef> segmentAbove(Terms terms, long bound, int numSegments, boolean byTtf) throws IOException {
+        List<BytesRef> above = new ArrayList<>();
+        if (terms == null) {
+            return above;
+        }
+        TermsEnum te = terms.iterator();
+        BytesRef term;
+        while ((term = te.next()) != null) {
+            if (stat(te, byTtf) * numSegments > bound) {
+                above.add(BytesRef.deepCopyOf(term));
+            }
+        }
+        return above;
+    }
+
+    private static long[] segmentStats(Terms terms, BytesRef[] candidates) throws IOException {
+        long[] stats = new long[candidates.length * 2];
+        if (terms == null) {
+            return stats;
+        }
+        TermsEnum te = terms.iterator();
+        for (int i = 0; i < candidates.length; ++i) {
+            if (te.seekExact(candidates[i])) {
+                stats[2 * i] = te.docFreq();
+                stats[2 * i + 1] = te.totalTermFreq();
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        if (args.length < 1) {
+            out.println("usage: field <k> [" + TTF_OPTION + "]");
+            return;
+        }
+
+        final String field = args[0];
+        int k = DEFAULT_K;
+        boolean ttf = false;
+        for (int i = 1; i < args.length; ++i) {
+            if (TTF_OPTION.equals(args[i])) {
+                ttf = true;
+            } else {
+                try {
+                    k = Integer.parseInt(args[i]);
+                } catch (NumberFormatException e) {
+                    out.println("invalid k: " + args[i] + ", default to " + DEFAULT_K);
+                }
+            }
+        }
+
+        if (k <= 0) {
+            out.println("k must be positive");
+            return;
+        }
+
+        IndexReader reader = ctx.getIndexReader();
+        List<LeafReaderContext> leaves = reader.leaves();
+
+        boolean found = false;
+        for (LeafReaderContext leaf : leaves) {
+            FieldInfo finfo = leaf.reader().getFieldInfos().fieldInfo(field);
+            if (finfo != null && finfo.getIndexOptions() != IndexOptions.NONE) {
+                found = true;
+                if (ttf && finfo.getIndexOptions() == IndexOptions.DOCS) {
+                    out.println("totalTermFreq is not indexed for field: " + field);
+                    return;
+                }
+            }
+        }
+        if (!found) {
+            out.println("field: " + field + " is not indexed");
+            return;
+        }
+
+        long start = System.nanoTime();
+        TopTerms topTerms = topTerms(ctx.getExecutorService(), leaves, field, k, ttf);
+        long end = System.nanoTime();
+
+        BytesRefPrinter bytesRefPrinter = ctx.getTermBytesRefDisplay().getBytesRefPrinter(field);
+        for (int i = 0; i < topTerms.terms.length; ++i) {
+            out.println((i + 1) + ". " + bytesRefPrinter.print(topTerms.terms[i])
+                    + " (docFreq: " + topTerms.stats[i][0] + ", totalTermFreq: " + topTerms.stats[i][1] + ")");
+        }
+        out.println("segments: " + leaves.size() + ", candidates: " + topTerms.numCandidates
+                + ", second pass: " + topTerms.secondPass + ", time: " + (end - start) / 1000000L + "ms");
+        out.flush();
+    }
+
+    static class TopTerms {
+        // most frequent first
+        BytesRef[] terms;
+        // docFreq and totalTermFreq per term
+        long[][] stats;
+        int numCandidates;
+        boolean secondPass;
+    }
+
+    /**
+     * Exact top K terms of a field by docFreq, or by totalTermFreq if byTtf is set.
+     */
+    static TopTerms topTerms(ExecutorService executor, List<LeafReaderContext> leaves, final String field,
+                             final int topK, final boolean byTtf) throws Exception {
+        final int numSegments = leaves.size();
+
+        // phase 1: top K of every segment, their union are the candidates
+        List<SegmentTop> segmentTops = LeafTaskRunner.run(executor, leaves,
+                leaf -> segmentTop(leaf.reader().terms(field), topK, byTtf));
+
+        TreeSet<BytesRef> candidates = new TreeSet<>();
+        long upperBound = 0L;
+        for (SegmentTop segmentTop : segmentTops) {
+            candidates.addAll(segmentTop.terms);
+            upperBound += segmentTop.threshold;
+        }
+
+        long[][] globalStats = globalStats(executor, field, leaves, candidates);
+        long kthStat = kthLargest(globalStats, topK, byTtf);
+
+        // a term that is in no segment's top K is bounded by the sum of the segment thresholds,
+        // only when that can beat the current K-th value do we need a second pass
+        boolean secondPass = upperBound > kthStat;
+        if (secondPass) {
+            final long bound = kthStat;
+            List<List<BytesRef>> segmentAbove = LeafTaskRunner.run(executor, leaves,
+                    leaf -> segmentAbove(leaf.reader().terms(field), bound, numSegments, byTtf));
+            for (List<BytesRef> terms : segmentAbove) {
+                candidates.addAll(terms);
+            }
+            globalStats = globalStats(executor, field, leaves, candidates);
+        }
+
+        BytesRef[] candidateTerms = candidates.toArray(new BytesRef[candidates.size()]);
+        Integer[] order = new Integer[candidateTerms.length];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        final long[][] stats = globalStats;
+        final int statIdx = byTtf ? 1 : 0;
+        Arrays.sort(order, (a, b) -> Long.compare(stats[b][statIdx], stats[a][statIdx]));
+
+        TopTerms topTerms = new TopTerms();
+        int numResults = Math.min(topK, order.length);
+        topTerms.terms = new BytesRef[numResults];
+        topTerms.stats = new long[numResults][];
+        for (int i = 0; i < numResults; ++i) {
+            topTerms.terms[i] = candidateTerms[order[i]];
+            topTerms.stats[i] = stats[order[i]];
+        }
+        topTerms.numCandidates = candidateTerms.length;
+        topTerms.secondPass = secondPass;
+        return topTerms;
+    }
+
+    /**
+     * @return docFreq and totalTermFreq summed over all segments, per candidate in sorted order
+     */
+    private static long[][] globalStats(ExecutorService executor, final String field, List<LeafReaderContext> leaves,
+                                        SortedSet<BytesRef> candidates) throws Exception {
+        final BytesRef[] candidateTerms = candidates.toArray(new BytesRef[candidates.size()]);
+        List<long[]> segmentStats = LeafTaskRunner.run(executor, leaves,
+                leaf -> segmentStats(leaf.reader().terms(field), candidateTerms));
+        long[][] stats = new long[candidateTerms.length][2];
+        for (long[] segment : segmentStats) {
+            for (int i = 0; i < candidateTerms.length; ++i) {
+                stats[i][0] += segment[2 * i];
+                // totalTermFreq is -1 when the field does not index freqs
+                long ttf = segment[2 * i + 1];
+                stats[i][1] = (ttf < 0 || stats[i][1] < 0) ? -1L : stats[i][1] + ttf;
+            }
+        }
+        return stats;
+    }
+
+    private static long kthLargest(long[][] stats, int k, boolean byTtf) {
+        if (stats.length < k) {
+            return 0L;
+        }
+        long[] values = new long[stats.length];
+        for (int i = 0; i < stats.length; ++i) {
+            values[i] = stats[i][byTtf ? 1 : 0];
+        }
+        Arrays.sort(values);
+        return values[values.length - k];
+    }
+}
@@ -0,0 +1,203 @@
+package com.senseidb.clue.commands;
+
+import com.senseidb.clue.ClueContext;
+import com.senseidb.clue.util.LeafTaskRunner;
+import org.apache.lucene.index.*;
+import org.apache.lucene.index.MultiDocValues.OrdinalMap;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.packed.PackedInts;
+
+import java.io.PrintStream;
+import java.util.List;
+
+public class TopValuesCommand extends ClueCommand {
+
+    private static final int DEFAULT_TOP_N = 10;
+
+    public TopValuesCommand(ClueContext ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public String getName() {
+        return "top";
+    }
+
+    @Override
+    public String help() {
+        return "most frequent values of a sorted or sortedset docvalue field, <N> <field>";
+    }
+
+    private static class OrdCount {
+        int ord;
+        int count;
+
+        OrdCount(int ord, int count) {
+            this.ord = ord;
+            this.count = count;
+        }
+    }
+
+    private static class OrdCountQueue extends PriorityQueue<OrdCount> {
+        OrdCountQueue(int size) {
+            super(size);
+        }
+
+        @Override
+        protected boolean lessThan(OrdCount a, OrdCount b) {
+            if (a.count != b.count) {
+                return a.count < b.count;
+            }
+            // ties go to the smaller value
+            return a.ord > b.ord;
+        }
+    }
+
+    /**
+     * Counts the values of live docs of a segment, indexed by segment ordinal.
+     */
+    private static int[] countSegment(String field, DocValuesType docValType, LeafReader atomicReader) throws Exception {
+        Bits liveDocs = atomicReader.getLiveDocs();
+        int maxDoc = atomicReader.maxDoc();
+        if (docValType == DocValuesType.SORTED) {
+            SortedDocValues dv = DocValues.getSorted(atomicReader, field);
+            int[] counts = new int[dv.getValueCount()];
+            for (int k = 0; k < maxDoc; ++k) {
+                if (liveDocs != null && !liveDocs.get(k)) continue;
+                int ord = dv.getOrd(k);
+                if (ord >= 0) {
+                    counts[ord]++;
+                }
+            }
+            return counts;
+        } else {
+            SortedSetDocValues dv = DocValues.getSortedSet(atomicReader, field);
+            int[] counts = new int[(int) dv.getValueCount()];
+            for (int k = 0; k < maxDoc; ++k) {
+                if (liveDocs != null && !liveDocs.get(k)) continue;
+                dv.setDocument(k);
+                long ord;
+                while ((ord = dv.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                    counts[(int) ord]++;
+                }
+            }
+            return counts;
+        }
+    }
+
+    @Override
+    public void execute(String[] args, PrintStream out) throws Exception {
+        if (args.length < 2) {
+            out.println("usage: N field");
+            return;
+        }
+
+        int topN;
+        try {
+            topN = Integer.parseInt(args[0]);
+        } catch (Exception e) {
+            out.println("invalid N: " + args[0] + ", default to " + DEFAULT_TOP_N);
+            topN = DEFAULT_TOP_N;
+        }
+        if (topN <= 0) {
+            out.println("N must be positive");
+            return;
+        }
+        final String field = args[1];
+
+        IndexReader reader = ctx.getIndexReader();
+        List<LeafReaderContext> leaves = reader.leaves();
+
+        DocValuesType docValType = DocValuesType.NONE;
+        for (LeafReaderContext leaf : leaves) {
+            FieldInfo finfo = leaf.reader().getFieldInfos().fieldInfo(field);
+            if (finfo != null && finfo.getDocValuesType() != DocValuesType.NONE) {
+                docValType = finfo.getDocValuesType();
+                break;
+            }
+        }
+
+        if (docValType != DocValuesType.SORTED && docValType != DocValuesType.SORTED_SET) {
+            out.println("field: " + field + " does not have sorted or sortedset docvalues");
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        final DocValuesType type = docValType;
+        List<int[]> segmentCounts = LeafTaskRunner.run(ctx.getExecutorService(), leaves,
+                leaf -> countSegment(field, type, leaf.reader()));
+
+        // the ordinal map is what lets us count per segment and only translate each segment ordinal once
+        SortedDocValues[] sortedValues = null;
+        SortedSetDocValues[] sortedSetValues = null;
+        OrdinalMap ordinalMap;
+        if (type == DocValuesType.SORTED) {
+            sortedValues = new SortedDocValues[leaves.size()];
+            for (int i = 0; i < sortedValues.length; ++i) {
+                sortedValues[i] = DocValues.getSorted(leaves.get(i).reader(), field);
+            }
+            ordinalMap = OrdinalMap.build(reader.getCoreCacheKey(), sortedValues, PackedInts.DEFAULT);
+        } else {
+            sortedSetValues = new SortedSetDocValues[leaves.size()];
+            for (int i = 0; i < sortedSetValues.length; ++i) {
+                sortedSetValues[i] = DocValues.getSortedSet(leaves.get(i).reader(), field);
+            }
+            ordinalMap = OrdinalMap.build(reader.getCoreCacheKey(), sortedSetValues, PackedInts.DEFAULT);
+        }
+
+        long valueCount = ordinalMap.getValueCount();
+        if (valueCount > Integer.MAX_VALUE) {
+            out.println("too many unique values: " + valueCount);
+            return;
+        }
+
+        int[] globalCounts = new int[(int) valueCount];
+        long totalCount = 0L;
+        for (int i = 0; i < segmentCounts.size(); ++i) {
+            int[] counts = segmentCounts.get(i);
+            LongValues globalOrds = ordinalMap.getGlobalOrds(i);
+            for (int ord = 0; ord < counts.length; ++ord) {
+                if (counts[ord] > 0) {
+                    globalCounts[(int) globalOrds.get(ord)] += counts[ord];
+                    totalCount += counts[ord];
+                }
+            }
+        }
+
+        OrdCountQueue pq = new OrdCountQueue(Math.min(topN, globalCounts.length));
+        OrdCount spare = null;
+        for (int ord = 0; ord < globalCounts.length; ++ord) {
+            if (globalCounts[ord] == 0) continue;
+            if (spare == null) {
+                spare = new OrdCount(ord, globalCounts[ord]);
+            } else {
+                spare.ord = ord;
+                spare.count = globalCounts[ord];
+            }
+            spare = pq.insertWithOverflow(spare);
+        }
+
+        OrdCount[] top = new OrdCount[pq.size()];
+        for (int i = top.length - 1; i >= 0; --i) {
+            top[i] = pq.pop();
+        }
+
+        long end = System.nanoTime();
+
+        out.println("field: " + field + ", type: " + type + ", unique values: " + valueCount + ", total count: " + totalCount);
+        for (OrdCount oc : top) {
+            int segment = ordinalMap.getFirstSegmentNumber(oc.ord);
+            long segmentOrd = ordinalMap.getFirstSegmentOrd(oc.ord);
+            BytesRef val = sortedValues != null
+                    ? sortedValues[segment].lookupOrd((int) segmentOrd)
+                    : sortedSetValues[segment].lookupOrd(segmentOrd);
+            out.println(val.utf8ToString() + " (" + oc.count + ")");
+        }
+        out.println("time: " + (end - start) / 1000000L + "ms");
+        out.flush();
+    }
+}
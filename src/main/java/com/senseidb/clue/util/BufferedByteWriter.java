@@ -0,0 +1,111 @@
+package com.senseidb.clue.util;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered writer for large text dumps: numbers are encoded to ascii and
+ * BytesRef values are copied as raw utf8 bytes, so no objects are created per value.
+ * Closing the writer only flushes, the underlying stream is left open.
+ */
+public class BufferedByteWriter implements AutoCloseable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] MIN_LONG = String.valueOf(Long.MIN_VALUE).getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private final byte[] digits = new byte[20];
+    private int pos;
+
+    public BufferedByteWriter(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BufferedByteWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+        this.pos = 0;
+    }
+
+    public BufferedByteWriter write(byte b) throws IOException {
+        if (pos == buffer.length) {
+            flushBuffer();
+        }
+        buffer[pos++] = b;
+        return this;
+    }
+
+    public BufferedByteWriter write(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length) {
+            flushBuffer();
+            out.write(bytes, offset, length);
+            return this;
+        }
+        if (pos + length > buffer.length) {
+            flushBuffer();
+        }
+        System.arraycopy(bytes, offset, buffer, pos, length);
+        pos += length;
+        return this;
+    }
+
+    public BufferedByteWriter write(BytesRef bytesRef) throws IOException {
+        return write(bytesRef.bytes, bytesRef.offset, bytesRef.length);
+    }
+
+    public BufferedByteWriter write(long val) throws IOException {
+        if (val == Long.MIN_VALUE) {
+            return write(MIN_LONG, 0, MIN_LONG.length);
+        }
+        if (val < 0) {
+            write((byte) '-');
+            val = -val;
+        }
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' + (val % 10));
+            val /= 10;
+        } while (val != 0);
+        return write(digits, i, digits.length - i);
+    }
+
+    public BufferedByteWriter writeHex(BytesRef bytesRef) throws IOException {
+        int end = bytesRef.offset + bytesRef.length;
+        for (int i = bytesRef.offset; i < end; ++i) {
+            int b = bytesRef.bytes[i] & 0xFF;
+            write(HEX[b >>> 4]);
+            write(HEX[b & 0x0F]);
+        }
+        return this;
+    }
+
+    public BufferedByteWriter tab() throws IOException {
+        return write((byte) '\t');
+    }
+
+    public BufferedByteWriter newLine() throws IOException {
+        return write((byte) '\n');
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
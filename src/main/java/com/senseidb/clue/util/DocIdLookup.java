@@ -0,0 +1,103 @@
+package com.senseidb.clue.util;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.util.ArrayUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves a list of global docids to their segments. The docids are sorted first so each
+ * segment is visited once, in ascending docid order.
+ * <p>
+ * A docid argument is either a comma separated list, <code>@file</code> to read docids from a file,
+ * or <code>-</code> to read them from stdin. Files and stdin may separate docids by commas or whitespace.
+ */
+public final class DocIdLookup {
+
+    public static final String STDIN = "-";
+    public static final String FILE_PREFIX = "@";
+
+    private DocIdLookup() {
+    }
+
+    public interface SegmentVisitor {
+        void startSegment(int segmentIdx, LeafReaderContext leaf) throws Exception;
+
+        void visit(int docid, int subid) throws Exception;
+
+        default void outOfRange(int docid) throws Exception {
+        }
+    }
+
+    public static int[] parseDocIds(String arg) throws IOException {
+        if (STDIN.equals(arg)) {
+            return readDocIds(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        }
+        if (arg.startsWith(FILE_PREFIX)) {
+            try (Reader reader = Files.newBufferedReader(Paths.get(arg.substring(FILE_PREFIX.length())),
+                    StandardCharsets.UTF_8)) {
+                return readDocIds(reader);
+            }
+        }
+        String[] parts = arg.split(",");
+        int[] docids = new int[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            docids[i] = Integer.parseInt(parts[i].trim());
+        }
+        return docids;
+    }
+
+    private static int[] readDocIds(Reader reader) throws IOException {
+        BufferedReader lineReader = new BufferedReader(reader);
+        int[] docids = new int[1024];
+        int count = 0;
+        String line;
+        while ((line = lineReader.readLine()) != null) {
+            for (String s : line.split("[,\\s]+")) {
+                if (s.isEmpty()) continue;
+                docids = ArrayUtil.grow(docids, count + 1);
+                docids[count++] = Integer.parseInt(s);
+            }
+        }
+        return Arrays.copyOf(docids, count);
+    }
+
+    /**
+     * Sorts the given docids in place and visits each distinct docid, segment by segment.
+     */
+    public static void lookup(List<LeafReaderContext> leaves, int[] docids, SegmentVisitor visitor) throws Exception {
+        Arrays.sort(docids);
+        int currentSegment = -1;
+        int maxDoc = 0;
+        if (!leaves.isEmpty()) {
+            LeafReaderContext last = leaves.get(leaves.size() - 1);
+            maxDoc = last.docBase + last.reader().maxDoc();
+        }
+
+        for (int i = 0; i < docids.length; ++i) {
+            int docid = docids[i];
+            if (i > 0 && docid == docids[i - 1]) continue;
+            if (docid < 0 || docid >= maxDoc) {
+                visitor.outOfRange(docid);
+                continue;
+            }
+
+            int segmentIdx = ReaderUtil.subIndex(docid, leaves);
+            LeafReaderContext leaf = leaves.get(segmentIdx);
+            if (segmentIdx != currentSegment) {
+                currentSegment = segmentIdx;
+                visitor.startSegment(segmentIdx, leaf);
+            }
+            visitor.visit(docid, docid - leaf.docBase);
+        }
+    }
+}
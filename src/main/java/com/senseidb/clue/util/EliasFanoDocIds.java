@@ -0,0 +1,111 @@
+package com.senseidb.clue.util;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.io.IOException;
+
+/**
+ * Elias-Fano encoding of a sorted list of docids in [0, universe): the low bits of every docid
+ * are packed, the high bits are written as unary coded gaps into a bit vector.
+ * Takes at most 2 + log2(universe / size) bits per docid.
+ */
+public class EliasFanoDocIds {
+
+    private final int size;
+    private final int numLowBits;
+    private final long lowMask;
+    private final long[] lowBits;
+    private final long[] highBits;
+
+    /**
+     * @param docids sorted docids, no duplicates
+     * @param length number of docids to encode
+     * @param universe exclusive upper bound of the docids
+     */
+    public EliasFanoDocIds(int[] docids, int length, int universe) {
+        this.size = length;
+        this.numLowBits = (length == 0 || universe <= length) ? 0 : 31 - Integer.numberOfLeadingZeros(universe / length);
+        this.lowMask = (1L << numLowBits) - 1;
+        this.lowBits = new long[(int) (((long) length * numLowBits + 63) >>> 6)];
+        this.highBits = new long[(int) ((length + ((long) universe >>> numLowBits) + 1 + 63) >>> 6)];
+        for (int i = 0; i < length; ++i) {
+            long doc = docids[i];
+            if (numLowBits > 0) {
+                writeLow(i, doc & lowMask);
+            }
+            long highPos = (doc >>> numLowBits) + i;
+            highBits[(int) (highPos >>> 6)] |= 1L << highPos;
+        }
+    }
+
+    private void writeLow(int index, long value) {
+        long bitPos = (long) index * numLowBits;
+        int word = (int) (bitPos >>> 6);
+        int shift = (int) (bitPos & 63);
+        lowBits[word] |= value << shift;
+        if (shift + numLowBits > 64) {
+            lowBits[word + 1] |= value >>> (64 - shift);
+        }
+    }
+
+    private long readLow(int index) {
+        long bitPos = (long) index * numLowBits;
+        int word = (int) (bitPos >>> 6);
+        int shift = (int) (bitPos & 63);
+        long value = lowBits[word] >>> shift;
+        if (shift + numLowBits > 64) {
+            value |= lowBits[word + 1] << (64 - shift);
+        }
+        return value & lowMask;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long ramBytesUsed() {
+        return RamUsageEstimator.sizeOf(lowBits) + RamUsageEstimator.sizeOf(highBits);
+    }
+
+    public DocIdSetIterator iterator() {
+        return new DocIdSetIterator() {
+            private int index = -1;
+            private long highPos = -1;
+            private int doc = -1;
+
+            @Override
+            public int docID() {
+                return doc;
+            }
+
+            @Override
+            public int nextDoc() {
+                if (++index >= size) {
+                    return doc = NO_MORE_DOCS;
+                }
+                // next set bit after the previous one
+                long pos = highPos + 1;
+                int word = (int) (pos >>> 6);
+                long bits = highBits[word] >>> pos;
+                while (bits == 0) {
+                    bits = highBits[++word];
+                    pos = (long) word << 6;
+                }
+                highPos = pos + Long.numberOfTrailingZeros(bits);
+                long high = highPos - index;
+                return doc = (int) ((high << numLowBits) | (numLowBits > 0 ? readLow(index) : 0L));
+            }
+
+            @Override
+            public int advance(int target) throws IOException {
+                return slowAdvance(target);
+            }
+
+            @Override
+            public long cost() {
+                return size;
+            }
+        };
+    }
+}
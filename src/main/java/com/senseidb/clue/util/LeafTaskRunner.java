@@ -0,0 +1,47 @@
+package com.senseidb.clue.util;
+
+import org.apache.lucene.index.LeafReaderContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a task for every segment on an executor and collects the results in segment order.
+ */
+public final class LeafTaskRunner {
+
+    private LeafTaskRunner() {
+    }
+
+    public interface LeafTask<T> {
+        T run(LeafReaderContext leaf) throws Exception;
+    }
+
+    public static <T> List<T> run(ExecutorService executor, List<LeafReaderContext> leaves,
+                                  final LeafTask<T> task) throws Exception {
+        List<Future<T>> futures = new ArrayList<>(leaves.size());
+        for (final LeafReaderContext leaf : leaves) {
+            futures.add(executor.submit(() -> task.run(leaf)));
+        }
+
+        List<T> results = new ArrayList<>(leaves.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+}
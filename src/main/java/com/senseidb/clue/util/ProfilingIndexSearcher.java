@@ -0,0 +1,246 @@
+package com.senseidb.clue.util;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * IndexSearcher wrapping every Weight it creates, including the ones of sub clauses, and their
+ * Scorers with timing and counting delegates. The recorded times are inclusive of the sub clauses.
+ * Not thread safe and without query cache, a profiling searcher is meant for one search at a time.
+ */
+public class ProfilingIndexSearcher extends IndexSearcher {
+
+    public static final int BUILD_SCORER = 0;
+    public static final int NEXT_DOC = 1;
+    public static final int ADVANCE = 2;
+    public static final int MATCHES = 3;
+    public static final int SCORE = 4;
+    public static final String[] OPERATIONS = new String[]{
+            "build_scorer", "next_doc", "advance", "matches", "score"
+    };
+
+    public static class ProfileNode {
+        public final Query query;
+        public final List<ProfileNode> children = new ArrayList<>();
+        public long createWeightNanos;
+        // per segment and operation
+        public final long[][] counts;
+        public final long[][] nanos;
+
+        ProfileNode(Query query, int numSegments) {
+            this.query = query;
+            this.counts = new long[numSegments][OPERATIONS.length];
+            this.nanos = new long[numSegments][OPERATIONS.length];
+        }
+    }
+
+    private final List<ProfileNode> roots = new ArrayList<>();
+    private final Deque<ProfileNode> stack = new ArrayDeque<>();
+    private final int numSegments;
+
+    public ProfilingIndexSearcher(IndexReader reader) {
+        super(reader);
+        setQueryCache(null);
+        numSegments = reader.leaves().size();
+    }
+
+    public List<ProfileNode> getProfile() {
+        return roots;
+    }
+
+    @Override
+    public Weight createWeight(Query query, boolean needsScores) throws IOException {
+        ProfileNode node = new ProfileNode(query, numSegments);
+        if (stack.isEmpty()) {
+            roots.add(node);
+        } else {
+            stack.peek().children.add(node);
+        }
+        stack.push(node);
+        long start = System.nanoTime();
+        Weight weight;
+        try {
+            weight = super.createWeight(query, needsScores);
+        } finally {
+            node.createWeightNanos += System.nanoTime() - start;
+            stack.pop();
+        }
+        return new ProfileWeight(query, weight, node);
+    }
+
+    /**
+     * Only scorer() is delegated, so bulk scoring goes through the default bulk scorer of Weight
+     * and every clause is seen doc by doc.
+     */
+    private class ProfileWeight extends Weight {
+        private final Weight in;
+        private final ProfileNode node;
+
+        ProfileWeight(Query query, Weight in, ProfileNode node) {
+            super(query);
+            this.in = in;
+            this.node = node;
+        }
+
+        @Override
+        public void extractTerms(Set<Term> terms) {
+            in.extractTerms(terms);
+        }
+
+        @Override
+        public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+            return in.explain(context, doc);
+        }
+
+        @Override
+        public float getValueForNormalization() throws IOException {
+            return in.getValueForNormalization();
+        }
+
+        @Override
+        public void normalize(float norm, float boost) {
+            in.normalize(norm, boost);
+        }
+
+        @Override
+        public Scorer scorer(LeafReaderContext context) throws IOException {
+            long[] counts = node.counts[context.ord];
+            long[] nanos = node.nanos[context.ord];
+            // multi term queries may create the weights of their expansion while building the scorer
+            stack.push(node);
+            long start = System.nanoTime();
+            Scorer scorer;
+            try {
+                scorer = in.scorer(context);
+            } finally {
+                nanos[BUILD_SCORER] += System.nanoTime() - start;
+                counts[BUILD_SCORER]++;
+                stack.pop();
+            }
+            return scorer == null ? null : new ProfileScorer(this, scorer, counts, nanos);
+        }
+    }
+
+    private static class ProfileScorer extends Scorer {
+        private final Scorer in;
+        private final long[] counts;
+        private final long[] nanos;
+
+        ProfileScorer(Weight weight, Scorer in, long[] counts, long[] nanos) {
+            super(weight);
+            this.in = in;
+            this.counts = counts;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public int docID() {
+            return in.docID();
+        }
+
+        @Override
+        public float score() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return in.score();
+            } finally {
+                nanos[SCORE] += System.nanoTime() - start;
+                counts[SCORE]++;
+            }
+        }
+
+        @Override
+        public int freq() throws IOException {
+            return in.freq();
+        }
+
+        @Override
+        public Collection<ChildScorer> getChildren() throws IOException {
+            return in.getChildren();
+        }
+
+        @Override
+        public DocIdSetIterator iterator() {
+            return new ProfileIterator(in.iterator(), counts, nanos);
+        }
+
+        @Override
+        public TwoPhaseIterator twoPhaseIterator() {
+            final TwoPhaseIterator twoPhase = in.twoPhaseIterator();
+            if (twoPhase == null) {
+                return null;
+            }
+            return new TwoPhaseIterator(new ProfileIterator(twoPhase.approximation(), counts, nanos)) {
+                @Override
+                public boolean matches() throws IOException {
+                    long start = System.nanoTime();
+                    try {
+                        return twoPhase.matches();
+                    } finally {
+                        nanos[MATCHES] += System.nanoTime() - start;
+                        counts[MATCHES]++;
+                    }
+                }
+
+                @Override
+                public float matchCost() {
+                    return twoPhase.matchCost();
+                }
+            };
+        }
+    }
+
+    private static class ProfileIterator extends DocIdSetIterator {
+        private final DocIdSetIterator in;
+        private final long[] counts;
+        private final long[] nanos;
+
+        ProfileIterator(DocIdSetIterator in, long[] counts, long[] nanos) {
+            this.in = in;
+            this.counts = counts;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public int docID() {
+            return in.docID();
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return in.nextDoc();
+            } finally {
+                nanos[NEXT_DOC] += System.nanoTime() - start;
+                counts[NEXT_DOC]++;
+            }
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return in.advance(target);
+            } finally {
+                nanos[ADVANCE] += System.nanoTime() - start;
+                counts[ADVANCE]++;
+            }
+        }
+
+        @Override
+        public long cost() {
+            return in.cost();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.senseidb.clue.util;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * LRU cache of parsed queries, keyed by query string, and of TopDocs, keyed by query string,
+ * sort, number of hits and reader version. Bounded by an estimate of the memory used.
+ * Loading happens outside of the lock, so two threads missing on the same key may both load it.
+ */
+public class QueryResultCache {
+
+    public interface Loader<T> {
+        T load() throws Exception;
+    }
+
+    private static final long ENTRY_OVERHEAD = 64L;
+
+    private static final class TopDocsKey {
+        final String query;
+        final String sort;
+        final int numHits;
+        final long readerVersion;
+
+        TopDocsKey(String query, String sort, int numHits, long readerVersion) {
+            this.query = query;
+            this.sort = sort;
+            this.numHits = numHits;
+            this.readerVersion = readerVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TopDocsKey)) {
+                return false;
+            }
+            TopDocsKey other = (TopDocsKey) o;
+            return numHits == other.numHits && readerVersion == other.readerVersion
+                    && query.equals(other.query) && Objects.equals(sort, other.sort);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, sort, numHits, readerVersion);
+        }
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long bytes;
+
+        Entry(Object value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long queryHits;
+    private long queryMisses;
+    private long topDocsHits;
+    private long topDocsMisses;
+
+    /**
+     * @param maxBytes memory bound, 0 disables caching
+     */
+    public QueryResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    private static long stringBytes(String s) {
+        return s == null ? 0L : RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 2L * s.length();
+    }
+
+    private static long topDocsBytes(TopDocs topDocs) {
+        long size = ENTRY_OVERHEAD + RamUsageEstimator.shallowSizeOf(topDocs.scoreDocs);
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            size += RamUsageEstimator.shallowSizeOf(scoreDoc);
+            if (scoreDoc instanceof FieldDoc && ((FieldDoc) scoreDoc).fields != null) {
+                // sort values are boxed numbers or BytesRefs, assume a small object each
+                size += RamUsageEstimator.shallowSizeOf(((FieldDoc) scoreDoc).fields)
+                        + ((FieldDoc) scoreDoc).fields.length * 32L;
+            }
+        }
+        return size;
+    }
+
+    private synchronized Object get(Object key) {
+        Entry entry = entries.get(key);
+        boolean isQuery = key instanceof String;
+        if (entry != null) {
+            if (isQuery) queryHits++; else topDocsHits++;
+            return entry.value;
+        }
+        if (isQuery) queryMisses++; else topDocsMisses++;
+        return null;
+    }
+
+    private synchronized void put(Object key, Object value, long size) {
+        if (size > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(value, size));
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += size;
+        Iterator<Map.Entry<Object, Entry>> iter = entries.entrySet().iterator();
+        while (bytes > maxBytes && iter.hasNext()) {
+            bytes -= iter.next().getValue().bytes;
+            iter.remove();
+        }
+    }
+
+    public Query getQuery(String queryString, Loader<Query> loader) throws Exception {
+        Query query = (Query) get(queryString);
+        if (query != null) {
+            return query;
+        }
+        query = loader.load();
+        if (query != null) {
+            // the query string is the key, the parsed form is assumed to be of about the same size
+            put(queryString, query, ENTRY_OVERHEAD + 2 * stringBytes(queryString) + 2 * stringBytes(query.toString()));
+        }
+        return query;
+    }
+
+    /**
+     * @param sort description of the sort, null for relevance
+     */
+    public TopDocs getTopDocs(String queryString, String sort, int numHits, long readerVersion,
+                              Loader<TopDocs> loader) throws Exception {
+        TopDocsKey key = new TopDocsKey(queryString, sort, numHits, readerVersion);
+        TopDocs topDocs = (TopDocs) get(key);
+        if (topDocs != null) {
+            return topDocs;
+        }
+        topDocs = loader.load();
+        if (topDocs != null) {
+            put(key, topDocs, topDocsBytes(topDocs) + stringBytes(queryString) + stringBytes(sort));
+        }
+        return topDocs;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0L;
+    }
+
+    public synchronized void resetCounters() {
+        queryHits = queryMisses = topDocsHits = topDocsMisses = 0L;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long ramBytesUsed() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getQueryHits() {
+        return queryHits;
+    }
+
+    public synchronized long getQueryMisses() {
+        return queryMisses;
+    }
+
+    public synchronized long getTopDocsHits() {
+        return topDocsHits;
+    }
+
+    public synchronized long getTopDocsMisses() {
+        return topDocsMisses;
+    }
+}
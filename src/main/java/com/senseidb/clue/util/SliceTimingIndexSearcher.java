@@ -0,0 +1,68 @@
+package com.senseidb.clue.util;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * IndexSearcher running its slices on an executor and recording the time each slice took,
+ * so the slow segments of a search can be spotted.
+ */
+public class SliceTimingIndexSearcher extends IndexSearcher {
+
+    public static class SliceTiming {
+        public final List<Integer> segments;
+        public final long nanos;
+
+        SliceTiming(List<Integer> segments, long nanos) {
+            this.segments = segments;
+            this.nanos = nanos;
+        }
+    }
+
+    private final List<SliceTiming> timings = Collections.synchronizedList(new ArrayList<>());
+
+    public SliceTimingIndexSearcher(IndexReader reader, ExecutorService executor) {
+        super(reader, executor);
+    }
+
+    @Override
+    protected void search(List<LeafReaderContext> leaves, Weight weight, Collector collector) throws IOException {
+        long start = System.nanoTime();
+        try {
+            super.search(leaves, weight, collector);
+        } finally {
+            long nanos = System.nanoTime() - start;
+            List<Integer> segments = new ArrayList<>(leaves.size());
+            for (LeafReaderContext leaf : leaves) {
+                segments.add(leaf.ord);
+            }
+            timings.add(new SliceTiming(segments, nanos));
+        }
+    }
+
+    /**
+     * @return timings of the slices searched since the last reset, ordered by segment
+     */
+    public List<SliceTiming> getSliceTimings() {
+        List<SliceTiming> sorted;
+        synchronized (timings) {
+            sorted = new ArrayList<>(timings);
+        }
+        sorted.sort(Comparator.comparingInt(timing -> timing.segments.isEmpty() ? -1 : timing.segments.get(0)));
+        return sorted;
+    }
+
+    public void resetSliceTimings() {
+        timings.clear();
+    }
+}
@@ -0,0 +1,84 @@
+package com.senseidb.clue.util;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues.OrdinalMap;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.packed.PackedInts;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Facet state of a plain SORTED or SORTED_SET docvalues field: the ordinal map from the ords of
+ * every segment to global ords. It is built once, states are meant to be cached for as long as
+ * the reader is open.
+ */
+public class SortedSetFacetState {
+
+    private final IndexReader reader;
+    private final String field;
+    // null for a single segment, segment ords are global ords then
+    private final OrdinalMap ordinalMap;
+    private final int valueCount;
+
+    public SortedSetFacetState(IndexReader reader, String field) throws IOException {
+        this.reader = reader;
+        this.field = field;
+        List<LeafReaderContext> leaves = reader.leaves();
+        SortedSetDocValues[] values = new SortedSetDocValues[leaves.size()];
+        for (LeafReaderContext leaf : leaves) {
+            values[leaf.ord] = DocValues.getSortedSet(leaf.reader(), field);
+        }
+        long count;
+        if (values.length <= 1) {
+            ordinalMap = null;
+            count = values.length == 0 ? 0L : values[0].getValueCount();
+        } else {
+            ordinalMap = OrdinalMap.build(reader.getCombinedCoreAndDeletesKey(), values, PackedInts.DEFAULT);
+            count = ordinalMap.getValueCount();
+        }
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("too many values to facet on field: " + field + ", " + count);
+        }
+        valueCount = (int) count;
+    }
+
+    /**
+     * @return mapping from the ords of a segment to global ords
+     */
+    public LongValues getGlobalOrds(int segment) {
+        return ordinalMap == null ? LongValues.IDENTITY : ordinalMap.getGlobalOrds(segment);
+    }
+
+    /**
+     * @return the value of a global ord, looked up in the first segment holding it
+     */
+    public BytesRef lookupGlobalOrd(int ord) throws IOException {
+        int segment = ordinalMap == null ? 0 : ordinalMap.getFirstSegmentNumber(ord);
+        long segmentOrd = ordinalMap == null ? ord : ordinalMap.getFirstSegmentOrd(ord);
+        SortedSetDocValues values = DocValues.getSortedSet(reader.leaves().get(segment).reader(), field);
+        return BytesRef.deepCopyOf(values.lookupOrd(segmentOrd));
+    }
+
+    /**
+     * @return memory held by the state, which is the ordinal map
+     */
+    public long ramBytesUsed() {
+        return ordinalMap == null ? 0L : ordinalMap.ramBytesUsed();
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return number of global ords
+     */
+    public int getSize() {
+        return valueCount;
+    }
+}
@@ -0,0 +1,141 @@
+package com.senseidb.clue.util;
+
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PriorityQueue;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Merges the TermsEnums of several segments into one sorted enumeration, in the spirit of
+ * Lucene's MultiTermsEnum. Segments positioned on the same term are popped off a priority queue
+ * together and their stats are summed into primitives, so no objects are kept per term.
+ * <p>
+ * The returned BytesRef is only valid until the next call to {@link #next()} or {@link #seekCeil(BytesRef)}.
+ */
+public class TermsEnumMerger {
+
+    private static class Slot {
+        final TermsEnum termsEnum;
+        final int segment;
+        BytesRef term;
+
+        Slot(TermsEnum termsEnum, int segment) {
+            this.termsEnum = termsEnum;
+            this.segment = segment;
+        }
+    }
+
+    private static class SlotQueue extends PriorityQueue<Slot> {
+        SlotQueue(int size) {
+            super(size);
+        }
+
+        @Override
+        protected boolean lessThan(Slot a, Slot b) {
+            int cmp = a.term.compareTo(b.term);
+            if (cmp != 0) {
+                return cmp < 0;
+            }
+            return a.segment < b.segment;
+        }
+    }
+
+    private final Slot[] slots;
+    private final Slot[] top;
+    private final SlotQueue queue;
+    private int numTop;
+    private BytesRef current;
+    private long docFreq;
+    private long totalTermFreq;
+
+    /**
+     * @param termsEnums unpositioned enums, one per segment
+     */
+    public TermsEnumMerger(List<TermsEnum> termsEnums) {
+        slots = new Slot[termsEnums.size()];
+        top = new Slot[slots.length];
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = new Slot(termsEnums.get(i), i);
+        }
+        queue = new SlotQueue(Math.max(1, slots.length));
+        // nothing has been consumed yet, so the first next() advances every segment
+        System.arraycopy(slots, 0, top, 0, slots.length);
+        numTop = slots.length;
+        current = null;
+    }
+
+    public BytesRef next() throws IOException {
+        for (int i = 0; i < numTop; ++i) {
+            Slot slot = top[i];
+            slot.term = slot.termsEnum.next();
+            if (slot.term != null) {
+                queue.add(slot);
+            }
+        }
+        return pullTop();
+    }
+
+    /**
+     * Positions every segment on the smallest term greater than or equal to the target.
+     *
+     * @return the new current term, or null if no segment has such a term
+     */
+    public BytesRef seekCeil(BytesRef target) throws IOException {
+        queue.clear();
+        for (Slot slot : slots) {
+            if (slot.termsEnum.seekCeil(target) != TermsEnum.SeekStatus.END) {
+                slot.term = slot.termsEnum.term();
+                queue.add(slot);
+            }
+        }
+        return pullTop();
+    }
+
+    private BytesRef pullTop() throws IOException {
+        numTop = 0;
+        docFreq = 0L;
+        totalTermFreq = 0L;
+        if (queue.size() == 0) {
+            current = null;
+            return null;
+        }
+
+        current = queue.top().term;
+        while (queue.size() > 0 && queue.top().term.bytesEquals(current)) {
+            Slot slot = queue.pop();
+            top[numTop++] = slot;
+            docFreq += slot.termsEnum.docFreq();
+            long ttf = slot.termsEnum.totalTermFreq();
+            if (ttf < 0 || totalTermFreq < 0) {
+                totalTermFreq = -1L;
+            } else {
+                totalTermFreq += ttf;
+            }
+        }
+        return current;
+    }
+
+    public BytesRef term() {
+        return current;
+    }
+
+    public long docFreq() {
+        return docFreq;
+    }
+
+    /**
+     * @return sum of totalTermFreq over the segments, -1 if any segment does not track it
+     */
+    public long totalTermFreq() {
+        return totalTermFreq;
+    }
+
+    /**
+     * @return number of segments containing the current term
+     */
+    public int segmentCount() {
+        return numTop;
+    }
+}
@@ -0,0 +1,74 @@
+package com.senseidb.clue.test;
+
+import com.senseidb.clue.ClueConfiguration;
+import com.senseidb.clue.ClueContext;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertTrue;
+
+public class DocSetInfoCommandTest {
+
+    private static final int NUM_DOCS = 5000;
+    private static final int NUM_RARE = 100;
+
+    private Directory dir;
+    private ClueContext ctx;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new StandardAnalyzer()))) {
+            for (int i = 0; i < NUM_DOCS; ++i) {
+                Document doc = new Document();
+                doc.add(new StringField("f", i < NUM_RARE ? "rare" : "common", Store.NO));
+                if (i == 0) {
+                    doc.add(new StringField("f", "first", Store.NO));
+                }
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+        ctx = new ClueContext(dir, ClueConfiguration.load(), false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ctx.shutdown();
+        dir.close();
+    }
+
+    private String docSetInfo(String... args) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        ctx.getCommand("docsetinfo").execute(args, out);
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testTermMissingFromLastBucket() throws Exception {
+        String output = docSetInfo("f:rare");
+        assertTrue(output, output.contains("min: 0, max: 99, count: 100"));
+        assertTrue(output, output.contains("[100]"));
+    }
+
+    @Test
+    public void testTermOnlyInFirstDoc() throws Exception {
+        String output = docSetInfo("f:first");
+        assertTrue(output, output.contains("min: 0, max: 0, count: 1"));
+        assertTrue(output, output.contains("[1]"));
+    }
+}
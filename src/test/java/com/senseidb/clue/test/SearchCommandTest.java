@@ -0,0 +1,132 @@
+package com.senseidb.clue.test;
+
+import com.senseidb.clue.ClueConfiguration;
+import com.senseidb.clue.ClueContext;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchCommandTest {
+
+    private static final int NUM_SEGMENTS = 3;
+    private static final int DOCS_PER_SEGMENT = 20;
+    private static final String NEXT_PAGE = "next page: --cursor ";
+
+    private Directory dir;
+    private ClueContext ctx;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new RAMDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+        config.setIndexSort(new Sort(new SortField("year", SortField.Type.LONG, true)));
+        try (IndexWriter writer = new IndexWriter(dir, config)) {
+            // distinct years in ascending ranges, so the first pages all come from the last segment
+            int year = 0;
+            for (int i = 0; i < NUM_SEGMENTS; ++i) {
+                for (int j = 0; j < DOCS_PER_SEGMENT; ++j) {
+                    Document doc = new Document();
+                    doc.add(new NumericDocValuesField("year", 1000 + year++));
+                    doc.add(new StringField("color", "red", Store.NO));
+                    writer.addDocument(doc);
+                }
+                writer.commit();
+            }
+        }
+        ctx = new ClueContext(dir, ClueConfiguration.load(), false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ctx.shutdown();
+        dir.close();
+    }
+
+    private String search(String... args) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        ctx.getCommand("search").execute(args, out);
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> hits(String output) {
+        List<String> hits = new ArrayList<>();
+        for (String line : output.split("\n")) {
+            if (line.startsWith("doc: ")) {
+                hits.add(line);
+            }
+        }
+        return hits;
+    }
+
+    private static String cursor(String output) {
+        for (String line : output.split("\n")) {
+            if (line.startsWith(NEXT_PAGE)) {
+                return line.substring(NEXT_PAGE.length()).trim();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testEarlyTerminationPagesPastFirstPage() throws Exception {
+        String sort = "year:long:desc";
+        String first = search("color:red", "--sort", sort, "--size", "5", "--early");
+        assertTrue(first, first.contains("terminated early"));
+        assertEquals(5, hits(first).size());
+        String cursor = cursor(first);
+        assertNotNull(first, cursor);
+
+        String early = search("color:red", "--sort", sort, "--size", "5", "--cursor", cursor, "--early");
+        String full = search("color:red", "--sort", sort, "--size", "5", "--cursor", cursor);
+        assertEquals(5, hits(early).size());
+        assertEquals(hits(full), hits(early));
+        assertEquals("doc: 45, sort: [1054]", hits(early).get(0));
+    }
+
+    @Test
+    public void testEarlyTerminationOnCacheHit() throws Exception {
+        String first = search("color:red", "--sort", "year:long:desc", "--size", "5", "--early");
+        String second = search("color:red", "--sort", "year:long:desc", "--size", "5", "--early");
+        assertTrue(first, first.contains("terminated early"));
+        assertTrue(second, second.contains("(cached)"));
+        assertTrue(second, second.contains("terminated early"));
+    }
+
+    @Test
+    public void testNumericSortNeedsType() throws Exception {
+        String output = search("color:red", "--sort", "year:desc");
+        assertTrue(output, output.contains("sort type needed for numeric docvalues field: year"));
+        assertTrue(hits(output).isEmpty());
+    }
+
+    @Test
+    public void testCursorWithOtherSortFields() throws Exception {
+        String first = search("color:red", "--sort", "year:long:desc", "--size", "5");
+        String cursor = cursor(first);
+        assertNotNull(first, cursor);
+        String output = search("color:red", "--sort", "year:long:desc,doc", "--size", "5", "--cursor", cursor);
+        assertTrue(output, output.contains("cursor does not match the sort"));
+    }
+}
@@ -0,0 +1,162 @@
+package com.senseidb.clue.test;
+
+import com.senseidb.clue.util.TermsEnumMerger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares memory allocation and time of the merged enumeration used by the terms command
+ * with the previous TreeMap/HashMap merge and with Lucene's MultiTermsEnum.
+ * <p>
+ * usage: num_terms num_segments [index_dir], every term is indexed in two segments.
+ */
+public class TermsMergeBenchmark {
+
+    private static final String FIELD = "term";
+
+    private static void buildIndex(Directory dir, int numTerms, int numSegments) throws Exception {
+        IndexWriterConfig config = new IndexWriterConfig();
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        config.setMergePolicy(NoMergePolicy.INSTANCE);
+        config.setRAMBufferSizeMB(512);
+        int step = Math.max(1, numTerms / numSegments);
+        try (IndexWriter writer = new IndexWriter(dir, config)) {
+            Document doc = new Document();
+            StringField field = new StringField(FIELD, "", Store.NO);
+            doc.add(field);
+            for (int s = 0; s < numSegments; ++s) {
+                for (int i = 0; i < 2 * step; ++i) {
+                    int termId = (s * step + i) % numTerms;
+                    field.setStringValue(String.format("t%010d", termId));
+                    writer.addDocument(doc);
+                }
+                writer.commit();
+            }
+        }
+    }
+
+    private static long legacyMerge(IndexReader reader) throws Exception {
+        TreeMap<BytesRef, TermsEnum> termMap = new TreeMap<>();
+        HashMap<BytesRef, AtomicInteger> termCountMap = new HashMap<>();
+        long numTerms = 0;
+        for (LeafReaderContext leaf : reader.leaves()) {
+            Terms terms = leaf.reader().terms(FIELD);
+            if (terms == null) continue;
+            TermsEnum te = terms.iterator();
+            BytesRef termBytes = te.next();
+            while (termBytes != null) {
+                AtomicInteger count = termCountMap.get(termBytes);
+                if (count == null) {
+                    termCountMap.put(termBytes, new AtomicInteger(te.docFreq()));
+                    termMap.put(termBytes, te);
+                    break;
+                }
+                count.getAndAdd(te.docFreq());
+                termBytes = te.next();
+            }
+        }
+        while (!termMap.isEmpty()) {
+            Map.Entry<BytesRef, TermsEnum> entry = termMap.pollFirstEntry();
+            termCountMap.remove(entry.getKey());
+            numTerms++;
+            TermsEnum te = entry.getValue();
+            BytesRef nextKey = te.next();
+            while (nextKey != null) {
+                AtomicInteger count = termCountMap.get(nextKey);
+                if (count == null) {
+                    termCountMap.put(nextKey, new AtomicInteger(te.docFreq()));
+                    termMap.put(nextKey, te);
+                    break;
+                }
+                count.getAndAdd(te.docFreq());
+                nextKey = te.next();
+            }
+        }
+        return numTerms;
+    }
+
+    private static long mergerMerge(IndexReader reader) throws Exception {
+        List<TermsEnum> enums = new ArrayList<>();
+        for (LeafReaderContext leaf : reader.leaves()) {
+            Terms terms = leaf.reader().terms(FIELD);
+            if (terms != null) {
+                enums.add(terms.iterator());
+            }
+        }
+        TermsEnumMerger merger = new TermsEnumMerger(enums);
+        long numTerms = 0;
+        long sumDocFreq = 0;
+        while (merger.next() != null) {
+            numTerms++;
+            sumDocFreq += merger.docFreq();
+        }
+        return sumDocFreq > 0 ? numTerms : 0;
+    }
+
+    private static long multiTermsMerge(IndexReader reader) throws Exception {
+        TermsEnum te = MultiFields.getTerms(reader, FIELD).iterator();
+        long numTerms = 0;
+        long sumDocFreq = 0;
+        while (te.next() != null) {
+            numTerms++;
+            sumDocFreq += te.docFreq();
+        }
+        return sumDocFreq > 0 ? numTerms : 0;
+    }
+
+    private interface Merge {
+        long run(IndexReader reader) throws Exception;
+    }
+
+    private static void measure(String name, Merge merge, IndexReader reader) throws Exception {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        System.gc();
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        long numTerms = merge.run(reader);
+        long end = System.nanoTime();
+        long allocated = threadBean.getThreadAllocatedBytes(tid) - allocatedBefore;
+        System.out.println(String.format("%-12s terms: %d, time: %dms, allocated: %.1fMB",
+                name, numTerms, (end - start) / 1000000L, allocated / (1024.0 * 1024.0)));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("usage: num_terms num_segments [index_dir]");
+            return;
+        }
+        int numTerms = Integer.parseInt(args[0]);
+        int numSegments = Integer.parseInt(args[1]);
+        Path indexPath = args.length > 2 ? java.nio.file.Paths.get(args[2]) : Files.createTempDirectory("clue-bench");
+
+        try (Directory dir = FSDirectory.open(indexPath)) {
+            if (!DirectoryReader.indexExists(dir)) {
+                long start = System.nanoTime();
+                buildIndex(dir, numTerms, numSegments);
+                System.out.println("index built at " + indexPath + " in " + (System.nanoTime() - start) / 1000000L + "ms");
+            }
+
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                System.out.println("segments: " + reader.leaves().size() + ", docs: " + reader.maxDoc());
+                for (int i = 0; i < 2; ++i) {
+                    measure("treemap", TermsMergeBenchmark::legacyMerge, reader);
+                    measure("merger", TermsMergeBenchmark::mergerMerge, reader);
+                    measure("multiterms", TermsMergeBenchmark::multiTermsMerge, reader);
+                }
+            }
+        }
+    }
+}